@@ -1,40 +1,364 @@
 package org.kamenkov.java_kanban;
 
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 import org.kamenkov.java_kanban.exceptions.ManagerSaveException;
+import org.kamenkov.java_kanban.exceptions.VersionConflictException;
 import org.kamenkov.java_kanban.servers.KVServer;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.lang.reflect.Type;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class KVTaskClient {
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Client of the {@link KVServer}.
+ * <p>
+ * All requests go through a single {@link HttpClient}, so connections to the server are kept alive and reused
+ * instead of being opened for every request.
+ * Client that has created its {@link HttpClient} itself stops its threads on {@link #close()}, an
+ * {@link HttpClient} passed to the constructor is left to its owner.
+ */
+public class KVTaskClient implements Closeable {
+
+    public static final int DEFAULT_THREADS = 2;
+    private static final Gson GSON = new Gson();
+    private static final Type STRING_MAP = new TypeToken<HashMap<String, String>>() {}.getType();
+    private static final Type STRING_LIST = new TypeToken<ArrayList<String>>() {}.getType();
+    private static final Type VERSION_MAP = new TypeToken<HashMap<String, Long>>() {}.getType();
+    private static final Type VERSIONED_MAP = new TypeToken<HashMap<String, VersionedValue>>() {}.getType();
 
     private final String apiToken;
     private final URI url;
+    private final transient HttpClient client;
+    /* Threads of the client created by this instance, null if the client was passed in */
+    private final transient ExecutorService executor;
 
     public KVTaskClient(URI url) throws IOException, InterruptedException {
+        this(url, HttpClient.Version.HTTP_1_1, DEFAULT_THREADS);
+    }
+
+    /**
+     * Creates client that talks to the server with the given HTTP version.
+     *
+     * @param url     {@link URI} of the {@link KVServer}.
+     * @param version {@link HttpClient.Version} of requests, {@link HttpClient.Version#HTTP_2} falls back to
+     *                HTTP/1.1 if the server does not support it.
+     * @param threads maximum number of threads that handle responses.
+     */
+    public KVTaskClient(URI url, HttpClient.Version version, int threads) throws IOException, InterruptedException {
+        this(url, version, newExecutor(threads));
+    }
+
+    private KVTaskClient(URI url, HttpClient.Version version, ExecutorService executor)
+            throws IOException, InterruptedException {
         this.url = url;
+        this.executor = executor;
+        client = HttpClient.newBuilder()
+                .version(version)
+                .executor(executor)
+                .build();
+        try {
+            apiToken = getToken(url);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            executor.shutdownNow();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates client that sends requests with the given {@link HttpClient}.
+     *
+     * @param url    {@link URI} of the {@link KVServer}.
+     * @param client {@link HttpClient} that can be shared with other clients.
+     */
+    public KVTaskClient(URI url, HttpClient client) throws IOException, InterruptedException {
+        this.url = url;
+        this.client = client;
+        executor = null;
         apiToken = getToken(url);
     }
 
+    /**
+     * Returns new {@link HttpClient} with a bounded pool of daemon threads. Threads that stay idle for a minute
+     * are stopped, so a client that is no longer used does not keep them.
+     *
+     * @param version {@link HttpClient.Version} of requests.
+     * @param threads maximum number of threads that handle responses.
+     * @return new {@link HttpClient}.
+     * @throws IllegalArgumentException if the number of threads is not positive.
+     */
+    public static HttpClient newHttpClient(HttpClient.Version version, int threads) {
+        return HttpClient.newBuilder()
+                .version(version)
+                .executor(newExecutor(threads))
+                .build();
+    }
+
+    private static ExecutorService newExecutor(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Amount of threads should be positive");
+        }
+        final AtomicInteger counter = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "kv-client-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Stops threads of the {@link HttpClient} created by this client. Requests that are still running may fail,
+     * an {@link HttpClient} passed to the constructor is not affected.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
     public void put(String key, String json) throws IOException, InterruptedException {
-        HttpClient client = HttpClient.newHttpClient();
-        final HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.ofString(json);
+        HttpResponse<String> response = client.send(createPutRequest(key, json), HttpResponse.BodyHandlers.ofString());
+        checkSaved(response);
+    }
+
+    public String load(String key) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(createLoadRequest(key), HttpResponse.BodyHandlers.ofString());
+        return getLoadedValue(response);
+    }
+
+    /**
+     * Saves the value without blocking the calling thread.
+     *
+     * @param key  key of the value.
+     * @param json value that should be saved.
+     * @return {@link CompletableFuture} completed when the server has saved the value or completed exceptionally
+     * with {@link ManagerSaveException} if it has not.
+     */
+    public CompletableFuture<Void> putAsync(String key, String json) {
+        return client.sendAsync(createPutRequest(key, json), HttpResponse.BodyHandlers.ofString())
+                .thenAccept(KVTaskClient::checkSaved);
+    }
+
+    /**
+     * Loads the value without blocking the calling thread.
+     *
+     * @param key key of the value.
+     * @return {@link CompletableFuture} with the value or null if there is no value for the key.
+     */
+    public CompletableFuture<String> loadAsync(String key) {
+        return client.sendAsync(createLoadRequest(key), HttpResponse.BodyHandlers.ofString())
+                .thenApply(KVTaskClient::getLoadedValue);
+    }
+
+    /**
+     * Saves all values in a single request.
+     *
+     * @param values values by their keys.
+     * @throws ManagerSaveException if the server has not saved the values.
+     */
+    public void putAll(Map<String, String> values) throws IOException, InterruptedException {
+        if (values.isEmpty()) {
+            return;
+        }
+        final HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.ofString(GSON.toJson(values));
+        URI putUrl = URI.create(url + KVServer.BATCH_SAVE_URL + "?API_TOKEN=" + apiToken);
+        HttpRequest request = HttpRequest.newBuilder().uri(putUrl).POST(body).build();
+        checkSaved(client.send(request, HttpResponse.BodyHandlers.ofString()));
+    }
+
+    /**
+     * Loads values of all keys in a single request.
+     *
+     * @param keys keys of the values.
+     * @return {@link Map} of the values by their keys, keys without value are left out.
+     * @throws ManagerSaveException if the server has not returned the values.
+     */
+    public Map<String, String> loadAll(Collection<String> keys) throws IOException, InterruptedException {
+        if (keys.isEmpty()) {
+            return new HashMap<>();
+        }
+        final HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.ofString(GSON.toJson(keys));
+        URI loadUrl = URI.create(url + KVServer.BATCH_LOAD_URL + "?API_TOKEN=" + apiToken);
+        HttpRequest request = HttpRequest.newBuilder().uri(loadUrl).POST(body).build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        checkLoaded(response);
+        return GSON.fromJson(response.body(), STRING_MAP);
+    }
+
+    /**
+     * Loads the value with its version.
+     *
+     * @param key key of the value.
+     * @return {@link VersionedValue} or null if there is no value for the key.
+     */
+    public VersionedValue loadVersioned(String key) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(createLoadRequest(key), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() == 200) {
+            return new VersionedValue(response.body(), getVersion(response));
+        }
+        return null;
+    }
+
+    /**
+     * Saves the value only if nobody has changed it since the given version was read.
+     *
+     * @param key     key of the value.
+     * @param json    value that should be saved.
+     * @param version version the key should have, zero if it should have no value.
+     * @return new version of the key.
+     * @throws VersionConflictException if the key has another version.
+     * @throws ManagerSaveException     if the server has not saved the value.
+     */
+    public long putIfVersion(String key, String json, long version) throws IOException, InterruptedException {
         URI putUrl = URI.create(url + KVServer.SAVE_URL + "/" + key + "?API_TOKEN=" + apiToken);
+        HttpRequest request = HttpRequest.newBuilder().uri(putUrl)
+                .header("If-Match", "\"" + version + "\"")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() == 412) {
+            throw new VersionConflictException("Value of " + key + " has been changed since version " + version,
+                    Map.of(key, getVersion(response)));
+        }
+        checkSaved(response);
+        return getVersion(response);
+    }
+
+    /**
+     * Loads values of all keys with their versions in a single request.
+     *
+     * @param keys keys of the values.
+     * @return {@link Map} of the values by their keys, keys without value are left out.
+     * @throws ManagerSaveException if the server has not returned the values.
+     */
+    public Map<String, VersionedValue> loadAllVersioned(Collection<String> keys)
+            throws IOException, InterruptedException {
+        if (keys.isEmpty()) {
+            return new HashMap<>();
+        }
+        final HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.ofString(GSON.toJson(keys));
+        URI loadUrl = URI.create(url + KVServer.BATCH_LOAD_URL + "?API_TOKEN=" + apiToken + "&versions=true");
+        HttpRequest request = HttpRequest.newBuilder().uri(loadUrl).POST(body).build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        checkLoaded(response);
+        return GSON.fromJson(response.body(), VERSIONED_MAP);
+    }
+
+    /**
+     * Saves all values in a single request if none of the keys has been changed since their versions were read.
+     *
+     * @param values   values by their keys.
+     * @param versions versions the keys should have, zero if the key should have no value; keys without version
+     *                 are saved unconditionally.
+     * @return {@link Map} of new versions by the keys.
+     * @throws VersionConflictException if a key has another version, nothing is saved then.
+     * @throws ManagerSaveException     if the server has not saved the values.
+     */
+    public Map<String, Long> putAllIfVersions(Map<String, String> values, Map<String, Long> versions)
+            throws IOException, InterruptedException {
+        return putAllIfVersions(values, List.of(), versions);
+    }
+
+    /**
+     * Saves the values and removes the keys in a single request if none of the keys has been changed since their
+     * versions were read.
+     *
+     * @param values      values by their keys.
+     * @param removedKeys keys whose values should be removed.
+     * @param versions    versions the keys should have, zero if the key should have no value; keys without version
+     *                    are saved or removed unconditionally.
+     * @return {@link Map} of new versions by the keys, zero for the removed ones.
+     * @throws VersionConflictException if a key has another version, nothing is changed then.
+     * @throws ManagerSaveException     if the server has not saved the values.
+     */
+    public Map<String, Long> putAllIfVersions(Map<String, String> values, Collection<String> removedKeys,
+                                              Map<String, Long> versions) throws IOException, InterruptedException {
+        if (values.isEmpty() && removedKeys.isEmpty()) {
+            return new HashMap<>();
+        }
+        final Map<String, VersionedValue> entries = new HashMap<>();
+        values.forEach((key, value) -> entries.put(key, new VersionedValue(value, versions.get(key))));
+        /* a value left out of the JSON removes the key */
+        removedKeys.forEach(key -> entries.put(key, new VersionedValue(null, versions.get(key))));
+        final HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.ofString(GSON.toJson(entries));
+        URI putUrl = URI.create(url + KVServer.BATCH_SAVE_URL + "?API_TOKEN=" + apiToken + "&versions=true");
         HttpRequest request = HttpRequest.newBuilder().uri(putUrl).POST(body).build();
         HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() == 412) {
+            throw new VersionConflictException("Values have been changed since they were read",
+                    GSON.fromJson(response.body(), VERSION_MAP));
+        }
+        checkSaved(response);
+        return GSON.fromJson(response.body(), VERSION_MAP);
+    }
+
+    /**
+     * Returns the keys that start with the prefix.
+     *
+     * @param prefix the prefix, empty for all keys.
+     * @return {@link List} of the keys in ascending order.
+     * @throws ManagerSaveException if the server has not returned the keys.
+     */
+    public List<String> keys(String prefix) throws IOException, InterruptedException {
+        URI keysUrl = URI.create(url + KVServer.KEYS_URL + "?API_TOKEN=" + apiToken + "&prefix="
+                + URLEncoder.encode(prefix, UTF_8));
+        HttpRequest request = HttpRequest.newBuilder().uri(keysUrl).GET().build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        checkLoaded(response);
+        return GSON.fromJson(response.body(), STRING_LIST);
+    }
+
+    private HttpRequest createPutRequest(String key, String json) {
+        final HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.ofString(json);
+        URI putUrl = URI.create(url + KVServer.SAVE_URL + "/" + key + "?API_TOKEN=" + apiToken);
+        return HttpRequest.newBuilder().uri(putUrl).POST(body).build();
+    }
+
+    private HttpRequest createLoadRequest(String key) {
+        URI loadUrl = URI.create(url + KVServer.LOAD_URL + "/" + key + "?API_TOKEN=" + apiToken);
+        return HttpRequest.newBuilder().uri(loadUrl).GET().build();
+    }
+
+    private static void checkSaved(HttpResponse<String> response) {
         if (response.statusCode() != 200) {
             throw new ManagerSaveException("Manager was not saved. " + response.statusCode() + ": " + response.body());
         }
     }
 
-    public String load(String key) throws IOException, InterruptedException {
-        HttpClient client = HttpClient.newHttpClient();
-        URI loadUrl = URI.create(url + KVServer.LOAD_URL + "/" + key + "?API_TOKEN=" + apiToken);
-        HttpRequest request = HttpRequest.newBuilder().uri(loadUrl).GET().build();
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    private static void checkLoaded(HttpResponse<String> response) {
+        if (response.statusCode() != 200) {
+            throw new ManagerSaveException("Values were not loaded. " + response.statusCode() + ": " + response.body());
+        }
+    }
+
+    private static long getVersion(HttpResponse<String> response) {
+        final String entityTag = response.headers().firstValue("ETag").orElse("0");
+        return Long.parseLong(entityTag.replace("\"", ""));
+    }
+
+    private static String getLoadedValue(HttpResponse<String> response) {
         if (response.statusCode() == 200) {
             return response.body();
         }
@@ -42,7 +366,6 @@ public class KVTaskClient {
     }
 
     private String getToken(URI url) throws InterruptedException, IOException {
-        HttpClient client = HttpClient.newHttpClient();
         URI registerUrl = URI.create(url + KVServer.REGISTER_URL);
         HttpRequest request = HttpRequest.newBuilder().uri(registerUrl).GET().build();
         HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
@@ -51,4 +374,30 @@ public class KVTaskClient {
         }
         return null;
     }
+
+    /**
+     * Value with the version it had on the server.
+     */
+    public static class VersionedValue {
+        private final String value;
+        private final Long version;
+
+        public VersionedValue(String value, Long version) {
+            this.value = value;
+            this.version = version;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * Returns the version of the value.
+         *
+         * @return version or null if the value should be saved unconditionally.
+         */
+        public Long getVersion() {
+            return version;
+        }
+    }
 }
@@ -3,14 +3,17 @@ package org.kamenkov.java_kanban;
 import org.kamenkov.java_kanban.managers.HttpTasksManager;
 import org.kamenkov.java_kanban.servers.HttpTaskServer;
 import org.kamenkov.java_kanban.servers.KVServer;
+import org.kamenkov.java_kanban.servers.LogKVStorage;
 
 import java.net.URI;
+import java.nio.file.Path;
 
 public class Main {
     public static void main(String[] args) {
         try {
-            new KVServer().start();
-            new HttpTaskServer(new HttpTasksManager(URI.create("http://localhost:8078"))).start();
+            new KVServer(new LogKVStorage(Path.of("kv.log"))).start();
+            new HttpTaskServer(HttpTasksManager.load(URI.create("http://localhost:8078"),
+                    HttpTasksManager.DEFAULT_PATH)).start();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,25 @@
+package org.kamenkov.java_kanban.exceptions;
+
+import java.util.Map;
+
+/**
+ * Thrown when values were not saved because somebody has changed them since they were read.
+ */
+public class VersionConflictException extends ManagerSaveException {
+
+    private final Map<String, Long> currentVersions;
+
+    public VersionConflictException(String message, Map<String, Long> currentVersions) {
+        super(message);
+        this.currentVersions = currentVersions;
+    }
+
+    /**
+     * Returns versions the keys had on the server when the values were rejected.
+     *
+     * @return {@link Map} of the versions by the keys, zero for keys without value.
+     */
+    public Map<String, Long> getCurrentVersions() {
+        return currentVersions;
+    }
+}
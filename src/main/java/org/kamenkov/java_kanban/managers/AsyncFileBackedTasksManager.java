@@ -0,0 +1,276 @@
+package org.kamenkov.java_kanban.managers;
+
+import org.kamenkov.java_kanban.task.Epic;
+import org.kamenkov.java_kanban.task.Subtask;
+import org.kamenkov.java_kanban.task.Task;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FileBackedTasksManager} that writes the backup file in background.
+ * Mutations only mark the manager as dirty, a writer thread flushes it at most once per flush interval.
+ * Explicit {@link #flush()} and {@link #close()} write pending changes right away, {@link #close()} is also
+ * called on JVM shutdown.
+ * <p>
+ * Durability: changes made during the last flush interval are lost if the process crashes or the flush fails,
+ * the backup file always contains the state at the end of some mutation.
+ * Methods of the manager are synchronized and return copies of the collections, so it can be shared with
+ * the writer thread. Views included in a flushed snapshot are removed from the history log only after the
+ * snapshot is written.
+ */
+public class AsyncFileBackedTasksManager extends FileBackedTasksManager {
+
+    private final Object writeLock = new Object();
+    private final ScheduledExecutorService writer;
+    private final Thread shutdownHook;
+    private boolean dirty;
+    private long saveRequests;
+    private long writes;
+
+    /**
+     * Creates manager that flushes the backup file in background.
+     *
+     * @param path                path of the backup file.
+     * @param flushIntervalMillis minimal interval between background flushes.
+     */
+    public AsyncFileBackedTasksManager(String path, long flushIntervalMillis) {
+        this(path, flushIntervalMillis, SnapshotFormat.CSV);
+    }
+
+    /**
+     * Creates manager that flushes the backup file of the given format in background.
+     *
+     * @param path                path of the backup file.
+     * @param flushIntervalMillis minimal interval between background flushes.
+     * @param format              {@link SnapshotFormat} of the backup file.
+     */
+    public AsyncFileBackedTasksManager(String path, long flushIntervalMillis, SnapshotFormat format) {
+        super(path, format);
+        if (flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Flush interval should be positive");
+        }
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "backup-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flushInBackground, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        shutdownHook = new Thread(this::flush, "backup-writer-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Returns new {@link AsyncFileBackedTasksManager} with all tasks from the backup file and its history log.
+     *
+     * @param file                {@link File} from data should be load.
+     * @param flushIntervalMillis minimal interval between background flushes.
+     * @return initialized {@link AsyncFileBackedTasksManager}.
+     */
+    public static AsyncFileBackedTasksManager loadFromFile(File file, long flushIntervalMillis) {
+        TasksSnapshot snapshot = readSnapshot(file);
+        HistoryLog.replay(getHistoryPath(file.getPath()), snapshot);
+        AsyncFileBackedTasksManager manager = new AsyncFileBackedTasksManager(file.getPath(), flushIntervalMillis);
+        synchronized (manager) {
+            manager.restore(snapshot);
+        }
+        return manager;
+    }
+
+    /**
+     * Marks the manager as dirty if the backup file of this manager should be saved, other files are written
+     * right away.
+     *
+     * @param path path of the file.
+     */
+    @Override
+    public synchronized void save(String path) {
+        if (!getPath().equals(path)) {
+            super.save(path);
+            return;
+        }
+        saveRequests++;
+        dirty = true;
+    }
+
+    /**
+     * Writes pending changes to the backup file.
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            byte[] content;
+            long historyMark;
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                content = serialize();
+                historyMark = getHistoryLogMark();
+                dirty = false;
+            }
+            try {
+                writeSnapshot(getPath(), content);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    dirty = true;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                resetHistoryLog(historyMark);
+                writes++;
+            }
+        }
+    }
+
+    /**
+     * Returns amount of save requests that did not cause their own write of the backup file.
+     *
+     * @return amount of coalesced writes.
+     */
+    public synchronized long getCoalescedWrites() {
+        return saveRequests - writes - (dirty ? 1 : 0);
+    }
+
+    /**
+     * Stops the writer thread, writes pending changes and closes the history log.
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // JVM is shutting down, the hook is running or has already run.
+        }
+        super.close();
+    }
+
+    private void flushInBackground() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized Collection<Task> getAllTaskObjects() {
+        return new ArrayList<>(super.getAllTaskObjects());
+    }
+
+    @Override
+    public synchronized Collection<Epic> getAllEpicObjects() {
+        return new ArrayList<>(super.getAllEpicObjects());
+    }
+
+    @Override
+    public synchronized Collection<Subtask> getAllSubtaskObjects() {
+        return new ArrayList<>(super.getAllSubtaskObjects());
+    }
+
+    @Override
+    public synchronized Set<Task> getPrioritizedTasks() {
+        return new LinkedHashSet<>(super.getPrioritizedTasks());
+    }
+
+    @Override
+    public synchronized Task getTaskObjectById(long id) {
+        return super.getTaskObjectById(id);
+    }
+
+    @Override
+    public synchronized Epic getEpicObjectById(long id) {
+        return super.getEpicObjectById(id);
+    }
+
+    @Override
+    public synchronized Subtask getSubtaskObjectById(long id) {
+        return super.getSubtaskObjectById(id);
+    }
+
+    @Override
+    public synchronized void removeAllTaskObjects() {
+        super.removeAllTaskObjects();
+    }
+
+    @Override
+    public synchronized void removeAllEpicObjects() {
+        super.removeAllEpicObjects();
+    }
+
+    @Override
+    public synchronized void removeAllSubtaskObjects() {
+        super.removeAllSubtaskObjects();
+    }
+
+    @Override
+    public synchronized Long createTask(Task task) {
+        return super.createTask(task);
+    }
+
+    @Override
+    public synchronized Long createEpic(Epic epic) {
+        return super.createEpic(epic);
+    }
+
+    @Override
+    public synchronized Long createSubtask(Subtask subtask) {
+        return super.createSubtask(subtask);
+    }
+
+    @Override
+    public synchronized void updateTask(Task task, Long id) {
+        super.updateTask(task, id);
+    }
+
+    @Override
+    public synchronized void updateEpic(Epic epic, Long id) {
+        super.updateEpic(epic, id);
+    }
+
+    @Override
+    public synchronized void updateSubtask(Subtask subtask, Long id) {
+        super.updateSubtask(subtask, id);
+    }
+
+    @Override
+    public synchronized void removeTask(long id) {
+        super.removeTask(id);
+    }
+
+    @Override
+    public synchronized void removeEpic(long id) {
+        super.removeEpic(id);
+    }
+
+    @Override
+    public synchronized void removeSubtask(long id) {
+        super.removeSubtask(id);
+    }
+
+    @Override
+    public synchronized Collection<Subtask> getSubtaskObjectsByParentId(long id) {
+        final Collection<Subtask> subtasks = super.getSubtaskObjectsByParentId(id);
+        return subtasks == null ? null : new ArrayList<>(subtasks);
+    }
+
+    @Override
+    public synchronized List<Task> getHistory() {
+        return super.getHistory();
+    }
+}
@@ -0,0 +1,240 @@
+package org.kamenkov.java_kanban.managers;
+
+import org.kamenkov.java_kanban.Status;
+import org.kamenkov.java_kanban.task.Epic;
+import org.kamenkov.java_kanban.task.Subtask;
+import org.kamenkov.java_kanban.task.Task;
+import org.kamenkov.java_kanban.task.Type;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Binary format of the backup file. All numbers are big-endian:
+ * <pre>
+ * int    magic "KNBN"
+ * short  version
+ * int    amount of strings, then for every string: int length, UTF-8 bytes
+ * int    amount of tasks, then for every task: int length of the record, record
+ * int    amount of viewed tasks, then long ID of every viewed task
+ * </pre>
+ * A task record is: long id, byte type, byte status, int summary and int description indexes in the string table
+ * (-1 for null), long start date in epoch seconds ({@link Long#MIN_VALUE} for null), long duration in minutes,
+ * long parent id ({@link Long#MIN_VALUE} for tasks that are not subtasks). Version 1 stored the start date in
+ * epoch minutes, such files are still read.
+ * Readers skip bytes of a record they do not know, so fields can be appended in the next versions.
+ * Type and status are stored as ordinals of {@link Type} and {@link Status}.
+ */
+class BinarySnapshot {
+
+    static final int MAGIC = 0x4B4E424E;
+    static final short VERSION = 2;
+    private static final short EPOCH_MINUTES_VERSION = 1;
+    private static final long NULL = Long.MIN_VALUE;
+    private static final Type[] TYPES = Type.values();
+    private static final Status[] STATUSES = Status.values();
+
+    private BinarySnapshot() {
+    }
+
+    /**
+     * Returns the given tasks and history in binary format.
+     *
+     * @param tasks   tasks ordered by their IDs.
+     * @param history IDs of viewed tasks.
+     * @return content of the backup file.
+     */
+    static byte[] write(Collection<? extends Task> tasks, Collection<Long> history) {
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> stringIndexes = new HashMap<>();
+        ByteArrayOutputStream records = new ByteArrayOutputStream(tasks.size() * 64);
+        try (DataOutputStream out = new DataOutputStream(records)) {
+            for (Task task : tasks) {
+                out.writeInt(Long.BYTES * 4 + 2 + Integer.BYTES * 2);
+                out.writeLong(task.getId());
+                out.writeByte(task.getType().ordinal());
+                out.writeByte(task.getStatus().ordinal());
+                out.writeInt(intern(task.getSummary(), strings, stringIndexes));
+                out.writeInt(intern(task.getDescription(), strings, stringIndexes));
+                out.writeLong(task.hasStartDate() ? task.getStartEpochSecond() : NULL);
+                out.writeLong(task.getDurationInMinutes());
+                out.writeLong(task instanceof Subtask ? ((Subtask) task).getParentId() : NULL);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream(records.size() + strings.size() * 32 + 64);
+        try (DataOutputStream out = new DataOutputStream(content)) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.writeInt(tasks.size());
+            records.writeTo(out);
+            out.writeInt(history.size());
+            for (Long id : history) {
+                out.writeLong(id);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return content.toByteArray();
+    }
+
+    /**
+     * Checks whether the file starts with the magic number of the binary format.
+     *
+     * @param path path of the file.
+     * @return true if the file is a binary snapshot.
+     */
+    static boolean isBinary(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // read until the magic number is complete or the file ends
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads all tasks and history from the binary snapshot.
+     *
+     * @param path path of the file.
+     * @return {@link TasksSnapshot} with loaded data.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if the file is not a binary snapshot or its version is not supported.
+     */
+    static TasksSnapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads complete task records of a damaged binary snapshot. Reading stops at the first record that
+     * cannot be read. History is not read, since it cannot be checked.
+     *
+     * @param path path of the file.
+     * @return {@link TasksSnapshot} with all complete records.
+     * @throws IOException if the file cannot be read.
+     */
+    static TasksSnapshot salvage(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), true);
+        }
+    }
+
+    private static TasksSnapshot read(ByteBuffer buffer) {
+        return read(buffer, false);
+    }
+
+    private static TasksSnapshot read(ByteBuffer buffer, boolean salvage) {
+        if (buffer.remaining() < Integer.BYTES + Short.BYTES || buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a binary snapshot");
+        }
+        final short version = buffer.getShort();
+        if (version > VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot version: " + version);
+        }
+        TasksSnapshot snapshot = new TasksSnapshot();
+        try {
+            final String[] strings = readStrings(buffer);
+            final int taskCount = buffer.getInt();
+            for (int i = 0; i < taskCount; i++) {
+                snapshot.put(readTask(buffer, strings, version));
+            }
+            if (salvage) {
+                return snapshot;
+            }
+            final int historySize = buffer.getInt();
+            for (int i = 0; i < historySize; i++) {
+                snapshot.view(buffer.getLong());
+            }
+        } catch (RuntimeException e) {
+            if (!salvage) {
+                throw e;
+            }
+        }
+        return snapshot;
+    }
+
+    private static String[] readStrings(ByteBuffer buffer) {
+        final String[] strings = new String[buffer.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            final byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, UTF_8);
+        }
+        return strings;
+    }
+
+    private static Task readTask(ByteBuffer buffer, String[] strings, short version) {
+        final int length = buffer.getInt();
+        final int next = buffer.position() + length;
+        if (length < 0 || next > buffer.limit()) {
+            throw new IllegalArgumentException("Record is out of the file");
+        }
+        final long id = buffer.getLong();
+        final Type type = TYPES[buffer.get()];
+        final Status status = STATUSES[buffer.get()];
+        final String summary = string(strings, buffer.getInt());
+        final String description = string(strings, buffer.getInt());
+        final long start = buffer.getLong();
+        final long duration = buffer.getLong();
+        final long parentId = buffer.getLong();
+        buffer.position(next);
+        Task task;
+        switch (type) {
+            case EPIC:
+                task = new Epic(summary, description);
+                break;
+            case SUBTASK:
+                task = new Subtask(summary, description, parentId);
+                break;
+            default:
+                task = new Task(summary, description);
+        }
+        task.setId(id);
+        task.setStatus(status);
+        final long startSecond = version == EPOCH_MINUTES_VERSION ? start * 60 : start;
+        task.setStartDate(start == NULL ? null : LocalDateTime.ofEpochSecond(startSecond, 0, ZoneOffset.UTC));
+        task.setDurationInMinutes(duration);
+        return task;
+    }
+
+    private static int intern(String value, List<String> strings, Map<String, Integer> stringIndexes) {
+        if (value == null) {
+            return -1;
+        }
+        return stringIndexes.computeIfAbsent(value, s -> {
+            strings.add(s);
+            return strings.size() - 1;
+        });
+    }
+
+    private static String string(String[] strings, int index) {
+        return index < 0 ? null : strings[index];
+    }
+}
@@ -0,0 +1,107 @@
+package org.kamenkov.java_kanban.managers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Thread-safe {@link IdManager} that hands out IDs one by one or in blocks.
+ * <p>
+ * IDs are taken from an {@link AtomicLong}, so threads never get the same ID and never wait for each other.
+ * A thread or a node that creates many tasks can reserve a whole block with {@link #reserveBlock(int)} and
+ * assign its IDs locally. The high-water mark is persisted through the reservation callback only when issued
+ * IDs pass the previous mark, and the new mark is a reservation block ahead, so most IDs cost no write.
+ * After a restart the manager continues from the persisted mark: IDs are never reused, at most one reservation
+ * block of them is skipped.
+ */
+public class BlockIdManager implements IdManager {
+
+    public static final int DEFAULT_RESERVATION_SIZE = 1000;
+
+    private final AtomicLong lastId;
+    private final int reservationSize;
+    private final LongConsumer reservation;
+    private volatile long reservedUntil;
+
+    public BlockIdManager() {
+        this(0L);
+    }
+
+    /**
+     * Creates the manager that continues after the given ID and persists nothing.
+     *
+     * @param lastId the last ID used.
+     */
+    public BlockIdManager(long lastId) {
+        this(lastId, DEFAULT_RESERVATION_SIZE, mark -> {});
+    }
+
+    /**
+     * Creates the manager that continues after the given ID and persists its high-water mark.
+     *
+     * @param lastId          the last ID used or the persisted high-water mark.
+     * @param reservationSize number of IDs reserved ahead on every write of the mark.
+     * @param reservation     callback that durably stores the mark, IDs up to the mark are issued only after
+     *                        it returns.
+     * @throws IllegalArgumentException if the last ID is negative or the reservation size is not positive.
+     */
+    public BlockIdManager(long lastId, int reservationSize, LongConsumer reservation) {
+        if (lastId < 0 || reservationSize <= 0) {
+            throw new IllegalArgumentException("Invalid last ID or reservation size: " + lastId + ", "
+                    + reservationSize);
+        }
+        this.lastId = new AtomicLong(lastId);
+        this.reservationSize = reservationSize;
+        this.reservation = reservation;
+        this.reservedUntil = lastId;
+    }
+
+    /**
+     * Increments and returns last available ID.
+     *
+     * @return {@link Long} ID.
+     */
+    @Override
+    public Long getLastId() {
+        return reserveBlock(1);
+    }
+
+    /**
+     * Reserves the given number of consecutive IDs.
+     *
+     * @param size number of IDs in the block.
+     * @return the first ID of the block.
+     * @throws IllegalArgumentException if the size is not positive.
+     */
+    public long reserveBlock(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size of the block should be positive: " + size);
+        }
+        final long last = lastId.addAndGet(size);
+        if (last > reservedUntil) {
+            reserveUntil(last);
+        }
+        return last - size + 1;
+    }
+
+    /**
+     * Returns the last issued ID.
+     *
+     * @return ID or zero if no IDs have been issued.
+     */
+    public long getLastIssuedId() {
+        return lastId.get();
+    }
+
+    /**
+     * Persists the mark a reservation block after the given ID. Only threads that issued IDs past the persisted
+     * mark wait for the write.
+     */
+    private synchronized void reserveUntil(long id) {
+        if (id <= reservedUntil) {
+            return;
+        }
+        final long mark = id + reservationSize;
+        reservation.accept(mark);
+        reservedUntil = mark;
+    }
+}
@@ -0,0 +1,120 @@
+package org.kamenkov.java_kanban.managers;
+
+import org.kamenkov.java_kanban.task.Task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link HistoryManager} with limited capacity that can be shared between threads without locks.
+ * <p>
+ * Every view gets the next sequence number. Views are ordered by their numbers in a {@link ConcurrentSkipListMap},
+ * the latest view of each task is found by its ID in a {@link ConcurrentHashMap}. A repeated view replaces the
+ * previous one, so the task moves to the end of the history. When the history grows over its capacity, the
+ * oldest views are evicted. An entry of the ordered map is visible only while it is the latest view of its task,
+ * so concurrent updates never show a task twice.
+ */
+public class ConcurrentHistoryManager implements HistoryManager {
+
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    private final int capacity;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Long, View> latestViews = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Long, View> views = new ConcurrentSkipListMap<>();
+
+    public ConcurrentHistoryManager() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates the history that keeps at most the given number of tasks.
+     *
+     * @param capacity maximum number of tasks in the history.
+     * @throws IllegalArgumentException if the capacity is not positive.
+     */
+    public ConcurrentHistoryManager(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity should be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void add(Task task) {
+        final View view = new View(sequence.incrementAndGet(), task);
+        final View previous = latestViews.put(task.getId(), view);
+        views.put(view.sequence, view);
+        if (previous != null) {
+            views.remove(previous.sequence);
+        }
+        if (latestViews.get(task.getId()) != view) {
+            // removed or viewed again while this view was being added
+            views.remove(view.sequence);
+        }
+        evictOverCapacity();
+    }
+
+    @Override
+    public void remove(Long id) {
+        final View view = latestViews.remove(id);
+        if (view != null) {
+            views.remove(view.sequence);
+        }
+    }
+
+    /**
+     * Returns the tasks in the order of their latest views. The history is read without locks, views added or
+     * removed during the call may be missed. A task viewed again during the call is returned once, at the place
+     * of its latest view that has been read.
+     *
+     * @return {@link List} of {@link Task} or empty {@link List}
+     */
+    @Override
+    public List<Task> getHistory() {
+        final List<Task> history = new ArrayList<>(Math.min(latestViews.size(), capacity));
+        final Set<Long> ids = new HashSet<>();
+        for (View view : views.descendingMap().values()) {
+            if (latestViews.get(view.task.getId()) == view && ids.add(view.task.getId())) {
+                history.add(view.task);
+            }
+        }
+        Collections.reverse(history);
+        return history;
+    }
+
+    /**
+     * Removes the oldest views until the history fits its capacity.
+     */
+    private void evictOverCapacity() {
+        while (latestViews.size() > capacity) {
+            final Map.Entry<Long, View> oldest = views.pollFirstEntry();
+            if (oldest == null) {
+                return;
+            }
+            final View view = oldest.getValue();
+            latestViews.remove(view.task.getId(), view);
+        }
+    }
+
+    /**
+     * Single view of a {@link Task}.
+     */
+    private static class View {
+        final long sequence;
+        final Task task;
+
+        View(long sequence, Task task) {
+            this.sequence = sequence;
+            this.task = task;
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package org.kamenkov.java_kanban.managers;
+
+import org.kamenkov.java_kanban.task.Epic;
+import org.kamenkov.java_kanban.task.Subtask;
+import org.kamenkov.java_kanban.task.Task;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * {@link TaskManager} that can be shared between threads.
+ * <p>
+ * Tasks are stored in {@link ConcurrentHashMap}s and ordered by start date in a {@link ConcurrentSkipListSet},
+ * so lookups and listings do not take locks. Mutations of an {@link Epic} and its {@link Subtask}s are serialized
+ * by a lock of that epic, updates of different epics run in parallel. The lock is created with the epic and removed
+ * with it. Updates of a plain {@link Task} are serialized by its entry in the map. Only the check for time
+ * intersections and the update of the {@link TimeSlotIndex} are done under a single schedule lock, which is always
+ * taken last. The history is kept in a bounded {@link ConcurrentHistoryManager} that takes no locks, or in another
+ * thread-safe {@link HistoryManager}.
+ */
+public class ConcurrentTaskManager implements TaskManager {
+
+    /* Error messages */
+    private static final String PARENT_CANNOT_BE_NULL = "Parent cannot be null";
+    private static final String OBJECT_CANNOT_BE_NULL = "Object cannot be null";
+    private static final String ID_CANNOT_BE_NULL = "ID cannot be null";
+    private static final String TIME_INTERSECTION_FOUND = "Time intersection found with task. ID: ";
+
+    private final IdManager idManager = new BlockIdManager();
+    private final HistoryManager historyManager;
+    private final Map<Long, Task> tasks = new ConcurrentHashMap<>();
+    private final Map<Long, Epic> epics = new ConcurrentHashMap<>();
+    private final Map<Long, Subtask> subtasks = new ConcurrentHashMap<>();
+    private final Map<Long, Object> epicLocks = new ConcurrentHashMap<>();
+    private final NavigableSet<Task> prioritizedTasks = new ConcurrentSkipListSet<>(new StartDateComparator());
+    private final TimeSlotIndex timeSlots = new TimeSlotIndex();
+    private final Object scheduleLock = new Object();
+
+    public ConcurrentTaskManager() {
+        this(ConcurrentHistoryManager.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates the manager whose history keeps at most the given number of tasks.
+     *
+     * @param historyCapacity maximum number of tasks in the history.
+     */
+    public ConcurrentTaskManager(int historyCapacity) {
+        this(new ConcurrentHistoryManager(historyCapacity));
+    }
+
+    /**
+     * Creates the manager with the given history, e.g. {@link PartitionedHistoryManager}.
+     *
+     * @param historyManager {@link HistoryManager} that can be shared between threads.
+     */
+    public ConcurrentTaskManager(HistoryManager historyManager) {
+        this.historyManager = Objects.requireNonNull(historyManager);
+    }
+
+    @Override
+    public Collection<Task> getAllTaskObjects() {
+        return tasks.values();
+    }
+
+    @Override
+    public Collection<Epic> getAllEpicObjects() {
+        return epics.values();
+    }
+
+    @Override
+    public Collection<Subtask> getAllSubtaskObjects() {
+        return subtasks.values();
+    }
+
+    @Override
+    public Task getTaskObjectById(Long id) {
+        return view(id == null ? null : tasks.get(id));
+    }
+
+    @Override
+    public Epic getEpicObjectById(Long id) {
+        return view(id == null ? null : epics.get(id));
+    }
+
+    @Override
+    public Subtask getSubtaskObjectById(Long id) {
+        return view(id == null ? null : subtasks.get(id));
+    }
+
+    @Override
+    public Set<Task> getPrioritizedTasks() {
+        return prioritizedTasks;
+    }
+
+    @Override
+    public void removeAllTaskObjects() {
+        for (Long id : tasks.keySet()) {
+            removeTask(id);
+        }
+    }
+
+    @Override
+    public void removeAllEpicObjects() {
+        for (Long id : epics.keySet()) {
+            final Object lock = lockOf(id);
+            if (lock == null) {
+                continue;
+            }
+            synchronized (lock) {
+                final Epic epic = epics.get(id);
+                if (epic != null) {
+                    removeEpic(epic);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void removeAllSubtaskObjects() {
+        for (Long id : epics.keySet()) {
+            final Object lock = lockOf(id);
+            if (lock == null) {
+                continue;
+            }
+            synchronized (lock) {
+                final Epic epic = epics.get(id);
+                if (epic == null) {
+                    continue;
+                }
+                updateEpicIndex(epic, () -> {
+                    for (Subtask subtask : epic.getSubtaskObjects()) {
+                        unindex(subtasks, subtask.getId());
+                    }
+                    epic.removeAllSubtasks();
+                });
+            }
+        }
+    }
+
+    @Override
+    public Long createTask(Task task) {
+        Objects.requireNonNull(task, OBJECT_CANNOT_BE_NULL);
+        final Long id = schedule(task, null);
+        tasks.put(id, task);
+        prioritizedTasks.add(task);
+        return id;
+    }
+
+    @Override
+    public Long createEpic(Epic epic) {
+        if (epic == null) {
+            return null;
+        }
+        final Long id = idManager.getLastId();
+        epic.setId(id);
+        epicLocks.put(id, new Object());
+        epics.put(id, epic);
+        prioritizedTasks.add(epic);
+        return id;
+    }
+
+    @Override
+    public Long createSubtask(Subtask subtask) {
+        Objects.requireNonNull(subtask, OBJECT_CANNOT_BE_NULL);
+        final Long parentId = Objects.requireNonNull(subtask.getParentId(), PARENT_CANNOT_BE_NULL);
+        final Object lock = Objects.requireNonNull(lockOf(parentId), PARENT_CANNOT_BE_NULL);
+        synchronized (lock) {
+            final Epic parent = Objects.requireNonNull(epics.get(parentId), PARENT_CANNOT_BE_NULL);
+            final Long id = schedule(subtask, null);
+            subtasks.put(id, subtask);
+            prioritizedTasks.add(subtask);
+            updateEpicIndex(parent, () -> parent.addSubtask(subtask));
+            return id;
+        }
+    }
+
+    @Override
+    public void updateTask(Task task, Long id) {
+        Objects.requireNonNull(task, OBJECT_CANNOT_BE_NULL);
+        Objects.requireNonNull(id, ID_CANNOT_BE_NULL);
+        tasks.computeIfPresent(id, (key, old) -> {
+            schedule(task, id);
+            removeFromPriorityIndex(old);
+            prioritizedTasks.add(task);
+            return task;
+        });
+    }
+
+    /**
+     * Replaces the {@link Epic} keeping its {@link Subtask}s, status and dates are recalculated from them.
+     *
+     * @param epic that should be saved.
+     * @param id   unique id of the {@link Epic}.
+     */
+    @Override
+    public void updateEpic(Epic epic, Long id) {
+        Objects.requireNonNull(epic, OBJECT_CANNOT_BE_NULL);
+        Objects.requireNonNull(id, ID_CANNOT_BE_NULL);
+        final Object lock = lockOf(id);
+        if (lock == null) {
+            return;
+        }
+        synchronized (lock) {
+            final Epic old = epics.get(id);
+            if (old == null) {
+                return;
+            }
+            epic.setId(id);
+            epic.getSubtaskObjects().clear();
+            epic.getSubtaskObjects().addAll(old.getSubtaskObjects());
+            epic.recalculateStatus();
+            epic.recalculateDates();
+            removeFromPriorityIndex(old);
+            epics.put(id, epic);
+            prioritizedTasks.add(epic);
+        }
+    }
+
+    @Override
+    public void updateSubtask(Subtask subtask, Long id) {
+        Objects.requireNonNull(subtask, OBJECT_CANNOT_BE_NULL);
+        Objects.requireNonNull(id, ID_CANNOT_BE_NULL);
+        final Long parentId = Objects.requireNonNull(subtask.getParentId(), PARENT_CANNOT_BE_NULL);
+        final Object parentLock = Objects.requireNonNull(lockOf(parentId), PARENT_CANNOT_BE_NULL);
+        final Subtask current = subtasks.get(id);
+        final Long oldParentId = current == null ? parentId : current.getParentId();
+        final Object oldParentLock = lockOf(oldParentId);
+        if (oldParentLock == null) {
+            // the old parent has been removed together with the subtask
+            return;
+        }
+        final boolean parentFirst = parentId.compareTo(oldParentId) <= 0;
+        synchronized (parentFirst ? parentLock : oldParentLock) {
+            synchronized (parentFirst ? oldParentLock : parentLock) {
+                final Epic parent = Objects.requireNonNull(epics.get(parentId), PARENT_CANNOT_BE_NULL);
+                final Subtask old = subtasks.get(id);
+                if (old == null) {
+                    return;
+                }
+                if (!old.getParentId().equals(oldParentId)) {
+                    // the subtask has been moved by another thread after the locks were chosen
+                    updateSubtask(subtask, id);
+                    return;
+                }
+                schedule(subtask, id);
+                removeFromPriorityIndex(old);
+                subtasks.put(id, subtask);
+                prioritizedTasks.add(subtask);
+                final Epic oldParent = epics.get(oldParentId);
+                if (oldParent == parent) {
+                    updateEpicIndex(parent, () -> parent.updateSubtask(subtask));
+                    return;
+                }
+                if (oldParent != null) {
+                    updateEpicIndex(oldParent, () -> oldParent.removeSubtask(old));
+                }
+                updateEpicIndex(parent, () -> parent.addSubtask(subtask));
+            }
+        }
+    }
+
+    @Override
+    public void removeTask(Long id) {
+        if (id == null) {
+            return;
+        }
+        unindex(tasks, id);
+    }
+
+    @Override
+    public void removeEpic(Long id) {
+        Objects.requireNonNull(id, ID_CANNOT_BE_NULL);
+        final Object lock = Objects.requireNonNull(lockOf(id), OBJECT_CANNOT_BE_NULL);
+        synchronized (lock) {
+            removeEpic(Objects.requireNonNull(epics.get(id), OBJECT_CANNOT_BE_NULL));
+        }
+    }
+
+    @Override
+    public void removeSubtask(Long id) {
+        Objects.requireNonNull(id, ID_CANNOT_BE_NULL);
+        final Subtask subtask = Objects.requireNonNull(subtasks.get(id), OBJECT_CANNOT_BE_NULL);
+        final Long parentId = subtask.getParentId();
+        final Object lock = Objects.requireNonNull(lockOf(parentId), PARENT_CANNOT_BE_NULL);
+        synchronized (lock) {
+            final Epic parent = Objects.requireNonNull(epics.get(parentId), PARENT_CANNOT_BE_NULL);
+            final Subtask removed = unindex(subtasks, id);
+            if (removed != null) {
+                updateEpicIndex(parent, () -> parent.removeSubtask(removed));
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the {@link Subtask}s of the {@link Epic} taken under the lock of the epic.
+     *
+     * @param id Epic id whose subtasks should be retrieved.
+     * @return {@link Collection} of {@link Subtask}.
+     */
+    @Override
+    public Collection<Subtask> getSubtaskObjectsByParentId(Long id) {
+        final Epic epic = getEpicObjectById(id);
+        final Object lock = epic == null ? null : lockOf(id);
+        if (lock == null) {
+            return null;
+        }
+        synchronized (lock) {
+            return new ArrayList<>(epic.getSubtaskObjects());
+        }
+    }
+
+    @Override
+    public List<Task> getHistory() {
+        return historyManager.getHistory();
+    }
+
+    /**
+     * Adds the found {@link Task} to the history.
+     *
+     * @param task {@link Task} that has been found or null.
+     * @return the given {@link Task}.
+     */
+    private <T extends Task> T view(T task) {
+        if (task != null) {
+            historyManager.add(task);
+        }
+        return task;
+    }
+
+    /**
+     * Checks the time slot of the {@link Task} and puts it to the {@link TimeSlotIndex} atomically.
+     * New tasks get their ID here.
+     *
+     * @param task {@link Task} that should be scheduled.
+     * @param id   unique id of the updated {@link Task} or null for a new one.
+     * @return ID of the {@link Task}.
+     * @throws IllegalArgumentException if the {@link Task} intersects with other {@link Task}.
+     */
+    private Long schedule(Task task, Long id) {
+        synchronized (scheduleLock) {
+            final Long previousId = task.getId();
+            task.setId(id);
+            final Optional<Task> intersectionTask = timeSlots.findFirstOverlap(task);
+            if (intersectionTask.isPresent()) {
+                task.setId(previousId);
+                throw new IllegalArgumentException(TIME_INTERSECTION_FOUND + intersectionTask.get().getId());
+            }
+            task.setId(id == null ? idManager.getLastId() : id);
+            timeSlots.add(task);
+            return task.getId();
+        }
+    }
+
+    /**
+     * Removes the {@link Task} with the given ID from the map, all indexes and the history.
+     *
+     * @param map from which the {@link Task} should be removed.
+     * @param id  unique id of the {@link Task}.
+     * @return removed {@link Task} or null if it was not found.
+     */
+    private <T extends Task> T unindex(Map<Long, T> map, Long id) {
+        final T task = map.remove(id);
+        if (task == null) {
+            return null;
+        }
+        synchronized (scheduleLock) {
+            timeSlots.remove(id);
+        }
+        removeFromPriorityIndex(task);
+        historyManager.remove(id);
+        return task;
+    }
+
+    /**
+     * Removes the {@link Epic} with all its {@link Subtask}s. Should be called under the lock of the epic.
+     *
+     * @param epic {@link Epic} that should be removed.
+     */
+    private void removeEpic(Epic epic) {
+        for (Subtask subtask : epic.getSubtaskObjects()) {
+            unindex(subtasks, subtask.getId());
+        }
+        epic.removeAllSubtasks();
+        unindex(epics, epic.getId());
+        epicLocks.remove(epic.getId());
+    }
+
+    /**
+     * Runs the update of the {@link Epic} aggregates keeping its position in the priority index.
+     * Should be called under the lock of the epic.
+     *
+     * @param epic   {@link Epic} that should be updated.
+     * @param update update of the epic.
+     */
+    private void updateEpicIndex(Epic epic, Runnable update) {
+        removeFromPriorityIndex(epic);
+        update.run();
+        if (epics.get(epic.getId()) == epic) {
+            prioritizedTasks.add(epic);
+        }
+    }
+
+    /**
+     * Removes the {@link Task} from the priority index. If the start date of the stored object has been changed
+     * outside the manager, the index is scanned for the object.
+     *
+     * @param task {@link Task} that should be removed.
+     */
+    private void removeFromPriorityIndex(Task task) {
+        if (!prioritizedTasks.remove(task)) {
+            prioritizedTasks.removeIf(indexed -> indexed == task);
+        }
+    }
+
+    /**
+     * Returns lock of the {@link Epic}. The lock is created together with the epic and removed together with it,
+     * so the epic should be looked up again under the lock.
+     *
+     * @param epicId unique id of the {@link Epic}.
+     * @return lock object or null if there is no such epic.
+     */
+    private Object lockOf(Long epicId) {
+        return epicLocks.get(epicId);
+    }
+
+    /**
+     * Comparator to compare tasks by their start date, tasks without start date are the last ones.
+     * Tasks with equal start dates are ordered by their IDs.
+     */
+    private static class StartDateComparator implements Comparator<Task> {
+        @Override
+        public int compare(Task o1, Task o2) {
+            if (o1.hasStartDate() && o2.hasStartDate()) {
+                final int byDate = Long.compare(o1.getStartEpochSecond(), o2.getStartEpochSecond());
+                if (byDate != 0) {
+                    return byDate;
+                }
+            } else if (o1.hasStartDate()) {
+                return -1;
+            } else if (o2.hasStartDate()) {
+                return 1;
+            }
+            return o1.getId().compareTo(o2.getId());
+        }
+    }
+}
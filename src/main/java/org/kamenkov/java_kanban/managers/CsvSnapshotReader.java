@@ -0,0 +1,374 @@
+package org.kamenkov.java_kanban.managers;
+
+import org.kamenkov.java_kanban.Status;
+import org.kamenkov.java_kanban.task.Epic;
+import org.kamenkov.java_kanban.task.Subtask;
+import org.kamenkov.java_kanban.task.Task;
+import org.kamenkov.java_kanban.task.Type;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Reader of the CSV backup file that parses records right from the memory-mapped file.
+ * Numbers, dates, types and statuses are parsed from the bytes of the record, only summary and description
+ * are decoded to {@link String}s.
+ */
+class CsvSnapshotReader {
+
+    static final int MIN_CHUNK_SIZE = 1 << 20;
+
+    private static final int FIELDS = 9;
+    private static final Type[] TYPES = Type.values();
+    private static final Status[] STATUSES = Status.values();
+    private static final byte[][] TYPE_NAMES = names(TYPES);
+    private static final byte[][] STATUS_NAMES = names(STATUSES);
+    private static final byte[] NULL = "null".getBytes(UTF_8);
+
+    private final ByteBuffer buffer;
+    private final int[] fieldStarts = new int[FIELDS];
+    private final int[] fieldEnds = new int[FIELDS];
+    private byte[] chars = new byte[256];
+
+    CsvSnapshotReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Reads all tasks and history from the CSV backup file.
+     *
+     * @param path path of the file.
+     * @return {@link TasksSnapshot} with loaded data.
+     * @throws IOException if the file cannot be read.
+     */
+    static TasksSnapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new CsvSnapshotReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())).read();
+        }
+    }
+
+    /**
+     * Reads all tasks and history from the CSV backup file parsing record-aligned chunks of the file
+     * on the given {@link ForkJoinPool}. Parsed tasks are put to the snapshot in file order by the calling thread.
+     *
+     * @param path         path of the file.
+     * @param pool         {@link ForkJoinPool} that parses chunks.
+     * @param minChunkSize minimal size of a chunk in bytes.
+     * @return {@link TasksSnapshot} with loaded data.
+     * @throws IOException if the file cannot be read.
+     */
+    static TasksSnapshot readInParallel(Path path, ForkJoinPool pool, int minChunkSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final CsvSnapshotReader reader = new CsvSnapshotReader(buffer);
+            final int start = Math.min(reader.lineBreak(0) + 1, buffer.limit());
+            final int size = buffer.limit() - start;
+            final int chunkCount = (int) Math.max(1, Math.min(pool.getParallelism() * 4L,
+                    size / Math.max(1, minChunkSize)));
+            List<ForkJoinTask<Chunk>> chunks = new ArrayList<>(chunkCount);
+            int from = start;
+            for (int i = 1; i <= chunkCount && from < buffer.limit(); i++) {
+                final int target = start + (int) ((long) size * i / chunkCount);
+                if (target <= from) {
+                    continue;
+                }
+                final int to = Math.min(reader.lineBreak(target - 1) + 1, buffer.limit());
+                final int chunkFrom = from;
+                chunks.add(pool.submit(() -> new CsvSnapshotReader(buffer.duplicate()).parseChunk(chunkFrom, to)));
+                from = to;
+            }
+            TasksSnapshot snapshot = new TasksSnapshot();
+            for (ForkJoinTask<Chunk> task : chunks) {
+                final Chunk chunk = task.join();
+                chunk.tasks.forEach(snapshot::put);
+                if (chunk.historyStart >= 0) {
+                    reader.parseHistory(chunk.historyStart, snapshot);
+                    return snapshot;
+                }
+                if (chunk.error != null) {
+                    throw chunk.error;
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Reads the header, all task records until the blank line and the history line.
+     *
+     * @return {@link TasksSnapshot} with loaded data.
+     */
+    TasksSnapshot read() {
+        TasksSnapshot snapshot = new TasksSnapshot();
+        final Chunk chunk = parseChunk(Math.min(lineBreak(0) + 1, buffer.limit()), buffer.limit());
+        chunk.tasks.forEach(snapshot::put);
+        if (chunk.historyStart >= 0) {
+            parseHistory(chunk.historyStart, snapshot);
+        } else if (chunk.error != null) {
+            throw chunk.error;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Reads complete task records of a damaged CSV backup file. Reading stops at the blank line, at the first
+     * record that cannot be parsed or at the record without trailing line break. History is not read,
+     * since it cannot be checked.
+     *
+     * @param path path of the file.
+     * @return {@link TasksSnapshot} with all complete records.
+     * @throws IOException if the file cannot be read.
+     */
+    static TasksSnapshot salvage(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new CsvSnapshotReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())).salvage();
+        }
+    }
+
+    TasksSnapshot salvage() {
+        TasksSnapshot snapshot = new TasksSnapshot();
+        int position = lineBreak(0) + 1;
+        while (position < buffer.limit()) {
+            final int lineBreak = lineBreak(position);
+            final int end = trimCarriageReturn(position, lineBreak);
+            if (lineBreak == buffer.limit() || isBlank(position, end)) {
+                break;
+            }
+            try {
+                snapshot.put(parseTask(position, end));
+            } catch (RuntimeException e) {
+                break;
+            }
+            position = lineBreak + 1;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Parses task records that start in the given range until the blank line.
+     * A chunk that starts after the blank line contains the history, so its parsing error is not thrown right away
+     * but kept in the {@link Chunk} and thrown only if no blank line has been found before it.
+     *
+     * @param from index of the first byte of the first record in the chunk.
+     * @param to   index of the first byte after the chunk, should be a start of a line or the limit of the buffer.
+     * @return parsed {@link Chunk}.
+     */
+    Chunk parseChunk(int from, int to) {
+        Chunk chunk = new Chunk();
+        int position = from;
+        try {
+            while (position < to) {
+                final int lineBreak = lineBreak(position);
+                final int end = trimCarriageReturn(position, lineBreak);
+                if (isBlank(position, end)) {
+                    chunk.historyStart = lineBreak + 1;
+                    break;
+                }
+                chunk.tasks.add(parseTask(position, end));
+                position = lineBreak + 1;
+            }
+        } catch (RuntimeException e) {
+            chunk.error = e;
+        }
+        return chunk;
+    }
+
+    private void parseHistory(int from, TasksSnapshot snapshot) {
+        if (from < buffer.limit()) {
+            parseHistory(from, trimCarriageReturn(from, lineBreak(from)), snapshot);
+        }
+    }
+
+    /**
+     * Parses the record in the given range of the buffer.
+     *
+     * @param from index of the first byte of the record.
+     * @param to   index after the last byte of the record.
+     * @return new {@link Task} object.
+     */
+    Task parseTask(int from, int to) {
+        int fields = 0;
+        int start = from;
+        for (int i = from; i < to && fields < FIELDS - 1; i++) {
+            if (buffer.get(i) == ',') {
+                fieldStarts[fields] = start;
+                fieldEnds[fields++] = i;
+                start = i + 1;
+            }
+        }
+        fieldStarts[fields] = start;
+        fieldEnds[fields++] = to;
+        if (fields < FIELDS - 1) {
+            throw new IllegalArgumentException("Not enough fields in the record: " + decode(from, to));
+        }
+        final long id = parseLong(0);
+        final Type type = parseEnum(TYPES, TYPE_NAMES, 1);
+        final String summary = decode(fieldStarts[2], fieldEnds[2]);
+        final Status status = parseEnum(STATUSES, STATUS_NAMES, 3);
+        final String description = decode(fieldStarts[4], fieldEnds[4]);
+        final LocalDateTime startDate = parseDate(5);
+        final long duration = parseLong(6);
+        Task task;
+        switch (type) {
+            case EPIC:
+                task = new Epic(summary, description);
+                break;
+            case SUBTASK:
+                if (fields < FIELDS) {
+                    throw new IllegalArgumentException("Subtask without epic: " + decode(from, to));
+                }
+                task = new Subtask(summary, description, parseLong(8));
+                break;
+            default:
+                task = new Task(summary, description);
+        }
+        task.setId(id);
+        task.setStatus(status);
+        task.setStartDate(startDate);
+        task.setDurationInMinutes(duration);
+        return task;
+    }
+
+    private void parseHistory(int from, int to, TasksSnapshot snapshot) {
+        int start = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || buffer.get(i) == ',') {
+                if (!isBlank(start, i)) {
+                    snapshot.view(parseLong(start, i));
+                }
+                start = i + 1;
+            }
+        }
+    }
+
+    private long parseLong(int field) {
+        return parseLong(fieldStarts[field], fieldEnds[field]);
+    }
+
+    private long parseLong(int from, int to) {
+        while (from < to && buffer.get(from) == ' ') {
+            from++;
+        }
+        while (to > from && buffer.get(to - 1) == ' ') {
+            to--;
+        }
+        final boolean negative = from < to && buffer.get(from) == '-';
+        int i = negative ? from + 1 : from;
+        if (i == to) {
+            throw new NumberFormatException("Empty number");
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            final int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException(decode(from, to));
+            }
+            value = Math.addExact(Math.multiplyExact(value, 10), digit);
+        }
+        return negative ? -value : value;
+    }
+
+    private <E extends Enum<E>> E parseEnum(E[] values, byte[][] names, int field) {
+        final int from = fieldStarts[field];
+        final int length = fieldEnds[field] - from;
+        for (int i = 0; i < values.length; i++) {
+            if (matches(names[i], from, length)) {
+                return values[i];
+            }
+        }
+        throw new IllegalArgumentException("Unknown constant: " + decode(from, fieldEnds[field]));
+    }
+
+    /**
+     * Parses date in format {@code yyyy-MM-ddTHH:mm}, other formats of {@link LocalDateTime#toString()}
+     * are delegated to {@link LocalDateTime#parse(CharSequence)}.
+     */
+    private LocalDateTime parseDate(int field) {
+        final int from = fieldStarts[field];
+        final int length = fieldEnds[field] - from;
+        if (matches(NULL, from, length)) {
+            return null;
+        }
+        if (length == 16 && buffer.get(from + 4) == '-' && buffer.get(from + 7) == '-'
+                && buffer.get(from + 10) == 'T' && buffer.get(from + 13) == ':') {
+            return LocalDateTime.of((int) parseLong(from, from + 4), (int) parseLong(from + 5, from + 7),
+                    (int) parseLong(from + 8, from + 10), (int) parseLong(from + 11, from + 13),
+                    (int) parseLong(from + 14, from + 16));
+        }
+        return LocalDateTime.parse(decode(from, fieldEnds[field]));
+    }
+
+    private boolean matches(byte[] name, int from, int length) {
+        if (name.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(from + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String decode(int from, int to) {
+        final int length = to - from;
+        if (chars.length < length) {
+            chars = new byte[Math.max(length, chars.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            chars[i] = buffer.get(from + i);
+        }
+        return new String(chars, 0, length, UTF_8);
+    }
+
+    private boolean isBlank(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!Character.isWhitespace(buffer.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns index of the line break that ends the line started at the given index or the limit of the buffer.
+     */
+    private int lineBreak(int from) {
+        int i = from;
+        while (i < buffer.limit() && buffer.get(i) != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    private int trimCarriageReturn(int from, int to) {
+        return to > from && buffer.get(to - 1) == '\r' ? to - 1 : to;
+    }
+
+    /**
+     * Tasks parsed from a chunk of the file.
+     */
+    static class Chunk {
+        final List<Task> tasks = new ArrayList<>();
+        int historyStart = -1;
+        RuntimeException error;
+    }
+
+    private static byte[][] names(Enum<?>[] values) {
+        byte[][] names = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            names[i] = values[i].name().getBytes(UTF_8);
+        }
+        return names;
+    }
+}
@@ -9,23 +9,47 @@ import org.kamenkov.java_kanban.task.Type;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
-public class FileBackedTasksManager extends InMemoryTaskManager {
+public class FileBackedTasksManager extends InMemoryTaskManager implements Closeable {
 
     private static final String DEFAULT_FILE_PATH = "backup.csv";
     private static final String HEADER = "id,type,name,status,description,start_date,duration,end_date,epic\n";
+    private static final String HISTORY_SUFFIX = ".history";
+    private static final String IDS_SUFFIX = ".ids";
+    static final int HISTORY_COMPACTION_THRESHOLD = 10_000;
+    private static final Logger LOG = Logger.getLogger(FileBackedTasksManager.class.getName());
 
     private final String path;
+    private final transient SnapshotFormat format;
+    private transient HistoryLog historyLog;
 
     public FileBackedTasksManager() {
         path = DEFAULT_FILE_PATH;
+        format = SnapshotFormat.CSV;
+        idManager = createIdManager(0L);
     }
 
     public FileBackedTasksManager(String path) {
+        this(path, SnapshotFormat.CSV);
+    }
+
+    /**
+     * Creates manager that writes the backup file in the given format.
+     *
+     * @param path   path of the backup file.
+     * @param format {@link SnapshotFormat} of the backup file.
+     */
+    public FileBackedTasksManager(String path, SnapshotFormat format) {
         this.path = Objects.requireNonNullElse(path, DEFAULT_FILE_PATH);
+        this.format = Objects.requireNonNullElse(format, SnapshotFormat.CSV);
+        idManager = createIdManager(0L);
     }
 
     /**
@@ -36,40 +60,198 @@ public class FileBackedTasksManager extends InMemoryTaskManager {
      */
     public static FileBackedTasksManager loadFromFile(File file) {
         FileBackedTasksManager fileBackedTasksManager = new FileBackedTasksManager();
-        Long lastId = 0L;
-        Map<Long, Task> allTasks = new HashMap<>();
-        try (Reader reader = new FileReader(file); BufferedReader bf = new BufferedReader(reader)) {
+        TasksSnapshot snapshot = readSnapshot(file);
+        HistoryLog.replay(getHistoryPath(file.getPath()), snapshot);
+        fileBackedTasksManager.restore(snapshot);
+        return fileBackedTasksManager;
+    }
+
+    /**
+     * Returns new {@link FileBackedTasksManager} with all tasks from the backup file and its history log.
+     * The format of the file is detected on load, the manager keeps writing it in the given format.
+     *
+     * @param file   {@link File} from data should be load.
+     * @param format {@link SnapshotFormat} of the backup file that should be written.
+     * @return initialized {@link FileBackedTasksManager}.
+     */
+    public static FileBackedTasksManager loadFromFile(File file, SnapshotFormat format) {
+        FileBackedTasksManager fileBackedTasksManager = new FileBackedTasksManager(file.getPath(), format);
+        TasksSnapshot snapshot = readSnapshot(file);
+        HistoryLog.replay(getHistoryPath(file.getPath()), snapshot);
+        fileBackedTasksManager.restore(snapshot);
+        return fileBackedTasksManager;
+    }
+
+    /**
+     * Returns new {@link FileBackedTasksManager} with all tasks from the backup file and its history log.
+     * Chunks of a CSV backup are parsed on the given {@link ForkJoinPool}, then tasks are linked to each other
+     * by the calling thread. Binary backups are read by the calling thread only.
+     *
+     * @param file {@link File} from data should be load.
+     * @param pool {@link ForkJoinPool} that parses the backup file.
+     * @return initialized {@link FileBackedTasksManager}.
+     */
+    public static FileBackedTasksManager loadFromFileInParallel(File file, ForkJoinPool pool) {
+        FileBackedTasksManager fileBackedTasksManager = new FileBackedTasksManager();
+        TasksSnapshot snapshot = readSnapshot(file, pool, CsvSnapshotReader.MIN_CHUNK_SIZE);
+        HistoryLog.replay(getHistoryPath(file.getPath()), snapshot);
+        fileBackedTasksManager.restore(snapshot);
+        return fileBackedTasksManager;
+    }
+
+    /**
+     * Converts the backup file to the given format. History log of the source file is not included.
+     *
+     * @param source {@link File} that should be converted.
+     * @param target {@link File} the converted backup should be written to.
+     * @param format {@link SnapshotFormat} of the target file.
+     */
+    public static void convert(File source, File target, SnapshotFormat format) {
+        TasksSnapshot snapshot = readSnapshot(source);
+        writeSnapshot(target.getPath(), serialize(format, snapshot.getTasks(), snapshot.getHistory()));
+    }
+
+    /**
+     * Checks the backup file against the checksums written with it.
+     *
+     * @param file backup {@link File}.
+     * @return false if the file has been damaged, e.g. by a crash during the write.
+     */
+    public static boolean isIntact(File file) {
+        try {
+            return SnapshotFile.isIntact(file.toPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Returns format of the given backup file.
+     *
+     * @param file backup {@link File}.
+     * @return {@link SnapshotFormat#BINARY} if the file starts with the binary header, {@link SnapshotFormat#CSV}
+     * otherwise.
+     */
+    public static SnapshotFormat detectFormat(File file) {
+        return BinarySnapshot.isBinary(file.toPath()) ? SnapshotFormat.BINARY : SnapshotFormat.CSV;
+    }
+
+    /**
+     * Reads all tasks and history from the given file of any {@link SnapshotFormat}.
+     * Files that fit into a single memory mapping are parsed by {@link CsvSnapshotReader}, larger CSV files
+     * are read line by line.
+     *
+     * @param file {@link File} from data should be load.
+     * @return {@link TasksSnapshot} with loaded data, empty if the file cannot be read.
+     */
+    static TasksSnapshot readSnapshot(File file) {
+        return readSnapshot(file, null, 0);
+    }
+
+    /**
+     * Reads all tasks and history from the given file of any {@link SnapshotFormat}.
+     *
+     * @param file         {@link File} from data should be load.
+     * @param pool         {@link ForkJoinPool} that parses chunks of a CSV file or null to read it by the calling
+     *                     thread.
+     * @param minChunkSize minimal size of a chunk in bytes.
+     * @return {@link TasksSnapshot} with loaded data, empty if the file cannot be read.
+     */
+    static TasksSnapshot readSnapshot(File file, ForkJoinPool pool, int minChunkSize) {
+        TasksSnapshot snapshot = readTasks(file, pool, minChunkSize);
+        snapshot.setReservedId(readReservedId(getIdsPath(file.getPath())));
+        return snapshot;
+    }
+
+    private static TasksSnapshot readTasks(File file, ForkJoinPool pool, int minChunkSize) {
+        if (file.exists() && !isIntact(file)) {
+            LOG.warning("Backup file is damaged, only complete records are loaded: " + file);
+            try {
+                return detectFormat(file) == SnapshotFormat.BINARY ? BinarySnapshot.salvage(file.toPath())
+                        : CsvSnapshotReader.salvage(file.toPath());
+            } catch (IOException e) {
+                e.printStackTrace();
+                return new TasksSnapshot();
+            }
+        }
+        if (detectFormat(file) == SnapshotFormat.BINARY) {
+            try {
+                return BinarySnapshot.read(file.toPath());
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                return new TasksSnapshot();
+            }
+        }
+        if (file.length() <= Integer.MAX_VALUE) {
+            try {
+                return pool == null ? CsvSnapshotReader.read(file.toPath())
+                        : CsvSnapshotReader.readInParallel(file.toPath(), pool, minChunkSize);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return new TasksSnapshot();
+            }
+        }
+        TasksSnapshot snapshot = new TasksSnapshot();
+        try (Reader reader = new FileReader(file, StandardCharsets.UTF_8); BufferedReader bf = new BufferedReader(reader)) {
             bf.readLine();
             while (bf.ready()) {
                 final String line = bf.readLine();
                 if (line.isBlank()) {
                     break;
                 }
-                Task task = fileBackedTasksManager.createTaskFromString(line);
-                lastId = task.getId();
-                if (task instanceof Epic) {
-                    fileBackedTasksManager.epics.put(task.getId(), (Epic) task);
-                } else if (task instanceof Subtask) {
-                    fileBackedTasksManager.subtasks.put(task.getId(), (Subtask) task);
-                    Subtask subtask = fileBackedTasksManager.getSubtaskObjectById(task.getId());
-                    Epic parent = fileBackedTasksManager.getEpicObjectById(subtask.getParentId());
-                    parent.addSubtask(subtask);
-                } else {
-                    fileBackedTasksManager.tasks.put(task.getId(), task);
-                }
-                fileBackedTasksManager.prioritizedTasks.add(task);
-                allTasks.put(task.getId(), task);
+                snapshot.put(createTaskFromString(line));
             }
-            fileBackedTasksManager.idManager = new InMemoryIdManager(lastId);
             final String historyLine = bf.readLine();
             if (historyLine != null) {
-                fileBackedTasksManager.historyManager = new InMemoryHistoryManager();
-                fileBackedTasksManager.fillHistoryManagerFromString(historyLine, allTasks);
+                fillHistoryFromString(historyLine, snapshot);
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
-        return fileBackedTasksManager;
+        return snapshot;
+    }
+
+    /**
+     * Puts all tasks and history of the given {@link TasksSnapshot} to memory.
+     * Nothing is persisted and no views are added to the history while restoring.
+     *
+     * @param snapshot {@link TasksSnapshot} that should be restored.
+     */
+    void restore(TasksSnapshot snapshot) {
+        long lastId = 0L;
+        Map<Long, Task> allTasks = new HashMap<>();
+        for (Task task : snapshot.getTasks()) {
+            if (task instanceof Epic) {
+                epics.put(task.getId(), (Epic) task);
+            } else if (task instanceof Subtask) {
+                subtasks.put(task.getId(), (Subtask) task);
+            } else {
+                tasks.put(task.getId(), task);
+            }
+            allTasks.put(task.getId(), task);
+            lastId = Math.max(lastId, task.getId());
+        }
+        for (Task task : snapshot.getTasks()) {
+            if (task instanceof Subtask) {
+                Epic parent = epics.get(((Subtask) task).getParentId());
+                if (parent != null) {
+                    parent.addSubtask((Subtask) task);
+                }
+            }
+        }
+        for (Task task : allTasks.values()) {
+            prioritizedTasks.add(task);
+            timeSlots.add(task);
+        }
+        idManager = createIdManager(Math.max(lastId, snapshot.getReservedId()));
+        historyManager = new InMemoryHistoryManager();
+        for (Long id : snapshot.getHistory()) {
+            Task task = allTasks.get(id);
+            if (task != null) {
+                historyManager.add(task);
+            }
+        }
     }
 
     /**
@@ -78,7 +260,7 @@ public class FileBackedTasksManager extends InMemoryTaskManager {
      * @param value {@link String} with all fields.
      * @return new {@link Task} object.
      */
-    private Task createTaskFromString(String value) {
+    static Task createTaskFromString(String value) {
         String[] values = value.split(",");
         Long id = Long.parseLong(values[0]);
         Type type = Type.valueOf(values[1]);
@@ -113,99 +295,291 @@ public class FileBackedTasksManager extends InMemoryTaskManager {
     }
 
     /**
-     * Fills {@link HistoryManager} with tasks.
+     * Fills history of the {@link TasksSnapshot} with task IDs.
      *
      * @param value {@link String} that should be parsed.
-     * @param allTasks the map that contains all tasks.
+     * @param snapshot the snapshot that contains all tasks.
      */
-    private void fillHistoryManagerFromString(String value, Map<Long, Task> allTasks) {
+    private static void fillHistoryFromString(String value, TasksSnapshot snapshot) {
         String[] values = value.split(",");
         for (String s : values) {
-            historyManager.add(allTasks.get(Long.parseLong(s)));
+            if (!s.isBlank()) {
+                snapshot.view(Long.parseLong(s));
+            }
         }
     }
 
     /**
      * Writes all tasks and history to file.
+     * If the file is the backup of this manager, its history log is truncated.
      */
     public void save(String path) {
-        File file = new File(path);
-        try (FileWriter writer = new FileWriter(file, StandardCharsets.UTF_8)) {
-            if (!file.exists()) {
-                file.createNewFile();
-            }
-            List<Task> tasks = new ArrayList<>();
-            tasks.addAll(getAllEpicObjects());
-            tasks.addAll(getAllTaskObjects());
-            tasks.addAll(getAllSubtaskObjects());
-            tasks.sort(Comparator.comparingLong(Task::getId));
-            StringBuilder sb = new StringBuilder(HEADER);
-            for (Task task : tasks) {
-                sb.append(task.toString()).append("\n");
-            }
-            sb.append("\n");
-            sb.append(getHistory().stream().map(Task::getId).map(String::valueOf).collect(Collectors.joining(",")));
-            writer.write(sb.toString());
+        writeSnapshot(path, serialize());
+        if (this.path.equals(path)) {
+            resetHistoryLog();
+        }
+    }
+
+    /**
+     * Returns all tasks and history in the format of the backup file.
+     *
+     * @return content of the backup file.
+     */
+    byte[] serialize() {
+        List<Task> tasks = new ArrayList<>();
+        tasks.addAll(getAllEpicObjects());
+        tasks.addAll(getAllTaskObjects());
+        tasks.addAll(getAllSubtaskObjects());
+        tasks.sort(Comparator.comparingLong(Task::getId));
+        return serialize(format, tasks, getHistory().stream().map(Task::getId).collect(Collectors.toList()));
+    }
+
+    /**
+     * Returns the given tasks and history in the given format.
+     *
+     * @param format  {@link SnapshotFormat} of the content.
+     * @param tasks   tasks ordered by their IDs.
+     * @param history IDs of viewed tasks.
+     * @return content of the backup file.
+     */
+    static byte[] serialize(SnapshotFormat format, Collection<? extends Task> tasks, Collection<Long> history) {
+        if (format == SnapshotFormat.BINARY) {
+            return BinarySnapshot.write(tasks, history);
+        }
+        StringBuilder sb = new StringBuilder(HEADER);
+        for (Task task : tasks) {
+            sb.append(task.toString()).append("\n");
+        }
+        sb.append("\n");
+        sb.append(history.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Atomically replaces the content of the file, see {@link SnapshotFile}.
+     *
+     * @param path    path of the file.
+     * @param content content of the backup file.
+     */
+    static void writeSnapshot(String path, byte[] content) {
+        try {
+            SnapshotFile.write(Path.of(path), content);
         } catch (IOException e) {
             throw new ManagerSaveException(e.getMessage());
         }
     }
 
+    /**
+     * Removes views that are already included in the backup file, the log is opened on the first call.
+     */
+    void resetHistoryLog() {
+        if (historyLog == null) {
+            historyLog = new HistoryLog(getHistoryPath(path));
+        } else {
+            historyLog.truncate();
+        }
+    }
+
+    /**
+     * Returns the length of the history log, so the views serialized into a snapshot can be removed
+     * once the snapshot is written, see {@link #resetHistoryLog(long)}.
+     *
+     * @return length of the log in bytes or -1 if the log is not opened yet.
+     */
+    long getHistoryLogMark() {
+        return historyLog == null ? -1 : historyLog.length();
+    }
+
+    /**
+     * Removes views logged before the mark, views logged afterwards are kept. The log is opened if it was not
+     * opened at the mark.
+     *
+     * @param mark value of {@link #getHistoryLogMark()} taken together with the snapshot.
+     */
+    void resetHistoryLog(long mark) {
+        if (mark < 0 || historyLog == null) {
+            resetHistoryLog();
+        } else {
+            historyLog.truncate(mark);
+        }
+    }
+
+    /**
+     * Returns path of the history log that belongs to the given backup file.
+     *
+     * @param path path of the backup file.
+     * @return path of the history log.
+     */
+    static Path getHistoryPath(String path) {
+        return Path.of(path + HISTORY_SUFFIX);
+    }
+
+    /**
+     * Returns path of the file with the highest reserved ID that belongs to the given backup file.
+     *
+     * @param path path of the backup file.
+     * @return path of the reservation file.
+     */
+    static Path getIdsPath(String path) {
+        return Path.of(path + IDS_SUFFIX);
+    }
+
+    /**
+     * Returns the {@link IdManager} that continues after the given ID. IDs are reserved ahead in the reservation
+     * file next to the backup, so tasks created after the last backup never share IDs with tasks created after
+     * a restart.
+     *
+     * @param lastId the last ID used.
+     * @return new {@link IdManager}.
+     */
+    IdManager createIdManager(long lastId) {
+        final Path idsPath = getIdsPath(path);
+        return new BlockIdManager(lastId, BlockIdManager.DEFAULT_RESERVATION_SIZE, mark -> {
+            try {
+                SnapshotFile.replace(idsPath, String.valueOf(mark).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new ManagerSaveException(e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Reads the highest reserved ID.
+     *
+     * @param path path of the reservation file.
+     * @return ID or zero if the file does not exist or cannot be read.
+     */
+    private static long readReservedId(Path path) {
+        if (!Files.exists(path)) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(Files.readString(path, StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            e.printStackTrace();
+            return 0L;
+        }
+    }
+
+    /**
+     * Closes the history log of the backup file.
+     */
     @Override
-    public Task getTaskObjectById(Long id) {
-        final Task task = super.getTaskObjectById(id);
+    public void close() {
+        if (historyLog != null) {
+            historyLog.close();
+        }
+    }
+
+    /**
+     * Returns path of the backup file.
+     *
+     * @return path.
+     */
+    String getPath() {
+        return path;
+    }
+
+    /**
+     * Persists the created or updated {@link Task}.
+     *
+     * @param task {@link Task} that has been saved in memory.
+     */
+    void onTaskSaved(Task task) {
+        save(path);
+    }
+
+    /**
+     * Persists removal of the tasks with the given IDs.
+     *
+     * @param ids IDs of the tasks that have been removed from memory.
+     */
+    void onTasksRemoved(Collection<Long> ids) {
         save(path);
+    }
+
+    /**
+     * Persists the view of the {@link Task}.
+     * Views are appended to the history log, the backup file is written only when the log is not opened yet
+     * or has grown over {@link #HISTORY_COMPACTION_THRESHOLD} views.
+     *
+     * @param task {@link Task} that has been viewed or null if nothing was found.
+     */
+    void onTaskViewed(Task task) {
+        if (task == null) {
+            return;
+        }
+        if (historyLog == null || historyLog.size() >= HISTORY_COMPACTION_THRESHOLD) {
+            save(path);
+        } else {
+            historyLog.append(task.getId());
+        }
+    }
+
+    @Override
+    public Task getTaskObjectById(long id) {
+        final Task task = super.getTaskObjectById(id);
+        onTaskViewed(task);
         return task;
     }
 
     @Override
-    public Epic getEpicObjectById(Long id) {
+    public Epic getEpicObjectById(long id) {
         final Epic epic = super.getEpicObjectById(id);
-        save(path);
+        onTaskViewed(epic);
         return epic;
     }
 
     @Override
-    public Subtask getSubtaskObjectById(Long id) {
+    public Subtask getSubtaskObjectById(long id) {
         final Subtask subtask = super.getSubtaskObjectById(id);
-        save(path);
+        onTaskViewed(subtask);
         return subtask;
     }
 
     @Override
     public void removeAllTaskObjects() {
+        final List<Long> ids = new ArrayList<>(tasks.keySet());
         super.removeAllTaskObjects();
-        save(path);
+        onTasksRemoved(ids);
     }
 
     @Override
     public void removeAllEpicObjects() {
+        final List<Long> ids = new ArrayList<>(epics.keySet());
         super.removeAllEpicObjects();
-        save(path);
+        onTasksRemoved(ids);
     }
 
     @Override
     public void removeAllSubtaskObjects() {
+        final List<Long> ids = new ArrayList<>(subtasks.keySet());
         super.removeAllSubtaskObjects();
-        save(path);
+        onTasksRemoved(ids);
     }
 
     @Override
     <T extends Task> Long createTask(T taskObject, Map<Long, T> map) {
         final Long task = super.createTask(taskObject, map);
-        save(path);
+        onTaskSaved(taskObject);
         return task;
     }
 
     @Override
     <T extends Task> void updateTask(T taskObject, Map<Long, T> map, Long id) {
         super.updateTask(taskObject, map, id);
-        save(path);
+        onTaskSaved(map.get(id));
     }
 
     @Override
-    <T extends Task> void removeEntryFromMap(Map<Long, T> map, Long id) {
+    <T extends Task> void removeEntryFromMap(LongHashMap<T> map, long id) {
         super.removeEntryFromMap(map, id);
-        save(path);
+        onTasksRemoved(Collections.singletonList(id));
+    }
+
+    @Override
+    <T extends Task> void removeEntriesFromMap(Map<Long, T> map, Collection<Long> ids) {
+        super.removeEntriesFromMap(map, ids);
+        onTasksRemoved(ids);
     }
 }
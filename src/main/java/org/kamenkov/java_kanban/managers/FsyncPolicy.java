@@ -0,0 +1,19 @@
+package org.kamenkov.java_kanban.managers;
+
+/**
+ * {@link Enum} that contains policies of forcing journal records to the storage device.
+ */
+public enum FsyncPolicy {
+    /**
+     * Every record is forced before the operation returns.
+     */
+    PER_OPERATION,
+    /**
+     * Records are forced once a batch of them was appended.
+     */
+    PER_BATCH,
+    /**
+     * Records are forced on the first append after the sync period has elapsed.
+     */
+    PERIODIC
+}
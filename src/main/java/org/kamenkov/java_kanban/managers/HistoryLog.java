@@ -0,0 +1,173 @@
+package org.kamenkov.java_kanban.managers;
+
+import org.kamenkov.java_kanban.exceptions.ManagerSaveException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Append-only log of views made after the last snapshot of a {@link FileBackedTasksManager}.
+ * Every view is a single line with the ID of the viewed task. Views are not forced to the storage device.
+ */
+class HistoryLog implements Closeable {
+
+    private final Path path;
+    private FileChannel channel;
+    private int records;
+
+    /**
+     * Opens the log, the existing views are removed.
+     *
+     * @param path path of the log file.
+     */
+    HistoryLog(Path path) {
+        this.path = path;
+        try {
+            channel = open(path);
+            channel.truncate(0);
+        } catch (IOException e) {
+            throw new ManagerSaveException(e.getMessage());
+        }
+    }
+
+    /**
+     * Appends the view of the task with the given ID.
+     *
+     * @param id unique id of the viewed task.
+     */
+    void append(Long id) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap((id + "\n").getBytes(UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            records++;
+        } catch (IOException e) {
+            throw new ManagerSaveException(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns amount of views appended since the log was opened or truncated.
+     *
+     * @return amount of views.
+     */
+    int size() {
+        return records;
+    }
+
+    /**
+     * Removes all views. Should be called once the history is included in a snapshot.
+     */
+    void truncate() {
+        try {
+            channel.truncate(0);
+            records = 0;
+        } catch (IOException e) {
+            throw new ManagerSaveException(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the length of the log.
+     *
+     * @return length in bytes.
+     */
+    long length() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            throw new ManagerSaveException(e.getMessage());
+        }
+    }
+
+    /**
+     * Removes views written before the given length of the log, later views are kept. The kept views are written
+     * to a new log that atomically replaces the current one, so they survive a crash in the middle.
+     *
+     * @param length length of the log when the removed views were included in a snapshot.
+     */
+    void truncate(long length) {
+        try {
+            final long size = channel.size();
+            if (length >= size) {
+                truncate();
+                return;
+            }
+            final ByteBuffer rest = ByteBuffer.allocate((int) (size - length));
+            int read = 0;
+            while (rest.hasRemaining() && read >= 0) {
+                read = channel.read(rest, length + rest.position());
+            }
+            rest.flip();
+            int kept = 0;
+            for (int i = rest.position(); i < rest.limit(); i++) {
+                if (rest.get(i) == '\n') {
+                    kept++;
+                }
+            }
+            final byte[] content = new byte[rest.remaining()];
+            rest.get(content);
+            SnapshotFile.replace(path, content);
+            channel.close();
+            channel = open(path);
+            records = kept;
+        } catch (IOException e) {
+            throw new ManagerSaveException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Opens the log for reading and appending. {@link StandardOpenOption#APPEND} cannot be combined with reading,
+     * so the position is moved to the end instead; only this object writes to the log.
+     */
+    private static FileChannel open(Path path) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        return channel.position(channel.size());
+    }
+
+    /**
+     * Applies all complete views of the log to the history of the given {@link TasksSnapshot}.
+     *
+     * @param path     path of the log file.
+     * @param snapshot {@link TasksSnapshot} the views should be applied to.
+     */
+    static void replay(Path path, TasksSnapshot snapshot) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        String content;
+        try {
+            content = new String(Files.readAllBytes(path), UTF_8);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        final int end = content.lastIndexOf('\n');
+        if (end < 0) {
+            return;
+        }
+        for (String record : content.substring(0, end).split("\n")) {
+            if (!record.isBlank()) {
+                snapshot.view(Long.parseLong(record));
+            }
+        }
+    }
+}
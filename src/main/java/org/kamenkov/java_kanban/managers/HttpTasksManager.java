@@ -1,42 +1,425 @@
 package org.kamenkov.java_kanban.managers;
 
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.InstanceCreator;
 import org.kamenkov.java_kanban.KVTaskClient;
 import org.kamenkov.java_kanban.exceptions.ManagerSaveException;
+import org.kamenkov.java_kanban.exceptions.VersionConflictException;
+import org.kamenkov.java_kanban.servers.KVEntry;
+import org.kamenkov.java_kanban.task.Epic;
+import org.kamenkov.java_kanban.task.Subtask;
+import org.kamenkov.java_kanban.task.Task;
+import org.kamenkov.java_kanban.task.Type;
 import org.kamenkov.java_kanban.utils.adapters.HistoryAdapter;
+import org.kamenkov.java_kanban.utils.adapters.IdManagerAdapter;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+/**
+ * {@link FileBackedTasksManager} that keeps its tasks on the {@link org.kamenkov.java_kanban.servers.KVServer}.
+ * <p>
+ * Tasks and the manifest are saved only if nobody has changed them since this manager loaded or saved them, and
+ * those it has never seen only if they do not exist yet, so several managers can share the same key prefix:
+ * a manager that is behind gets {@link VersionConflictException} instead of overwriting newer tasks, and should be
+ * loaded again with {@link #load(URI, String)}. The history is saved unconditionally.
+ * <p>
+ * Every task is kept under its own key, {@code path/type/id}, so a change sends only the changed tasks and removed
+ * tasks have their keys removed. The manifest holds only the last issued ID and is sent together with new tasks;
+ * tasks are found on load by listing the keys of the prefix.
+ */
 public class HttpTasksManager extends FileBackedTasksManager {
 
     private static final Gson GSON = new GsonBuilder()
             .registerTypeAdapter(HistoryManager.class, new HistoryAdapter())
-            .registerTypeAdapter(IdManager.class, (InstanceCreator<IdManager>) type -> new InMemoryIdManager())
+            .registerTypeAdapter(IdManager.class, new IdManagerAdapter())
             .serializeNulls()
             .create();
+    /* Epics are saved without subtasks, they are attached back by their parent IDs on load */
+    private static final Gson ENTITY_GSON = new GsonBuilder()
+            .setExclusionStrategies(new ExclusionStrategy() {
+                @Override
+                public boolean shouldSkipField(FieldAttributes field) {
+                    return field.getDeclaringClass() == Epic.class && "subtasks".equals(field.getName());
+                }
+
+                @Override
+                public boolean shouldSkipClass(Class<?> type) {
+                    return false;
+                }
+            })
+            .create();
+    public static final String DEFAULT_PATH = "test";
+    private static final String MANIFEST_KEY = "manifest";
+    private static final String HISTORY_KEY = "history";
     private KVTaskClient client;
     private URI uri;
+    /* Last ID listed in the manifest on the server, tasks with greater IDs are new to it */
+    private transient long manifestLastId;
+    /* Versions of the keys this manager has loaded or saved */
+    private transient Map<String, Long> versions = new HashMap<>();
 
     public HttpTasksManager(URI uri) throws IOException, InterruptedException {
-        super("test");
+        this(uri, DEFAULT_PATH);
+    }
+
+    /**
+     * Creates manager that keeps its tasks under the given key on the KV server.
+     *
+     * @param uri  {@link URI} of the KV server.
+     * @param path key prefix of the backup.
+     */
+    public HttpTasksManager(URI uri, String path) throws IOException, InterruptedException {
+        super(path);
         this.uri = uri;
         client = new KVTaskClient(uri);
     }
 
+    /**
+     * Writes every task, the history and the manifest under the given key prefix in a single request, keys of
+     * tasks that are no longer in the manager are removed in the same request.
+     * Changes made after that are sent one by one, see {@link #onTaskSaved(Task)}.
+     */
     @Override
     public void save(String path) {
+        final Map<String, String> values = new LinkedHashMap<>();
+        for (Task task : getAllEpicObjects()) {
+            putEntity(values, path, task);
+        }
+        for (Task task : getAllTaskObjects()) {
+            putEntity(values, path, task);
+        }
+        for (Task task : getAllSubtaskObjects()) {
+            putEntity(values, path, task);
+        }
+        values.put(path + "/" + HISTORY_KEY, getHistoryJson());
+        putManifest(values, path);
+        final List<String> removedKeys;
         try {
-            client.put(path, GSON.toJson(this));
+            removedKeys = client.keys(path + "/").stream()
+                    .filter(key -> getEntityType(path, key) != null && !values.containsKey(key))
+                    .collect(Collectors.toList());
         } catch (IOException | InterruptedException e) {
             throw new ManagerSaveException(e.getMessage());
         }
+        putAll(values, removedKeys);
+    }
+
+    /**
+     * Returns the {@link IdManager} without the reservation file, the last issued ID is saved with the tasks.
+     */
+    @Override
+    IdManager createIdManager(long lastId) {
+        return new BlockIdManager(lastId);
+    }
+
+    /**
+     * Sends only the changed {@link Task}. Epics are rebuilt from their subtasks on load, so a changed subtask
+     * does not resend its parent. A new task is sent in the same request as the manifest that lists it.
+     */
+    @Override
+    void onTaskSaved(Task task) {
+        if (task == null) {
+            return;
+        }
+        final Map<String, String> values = new LinkedHashMap<>();
+        putEntity(values, getPath(), task);
+        if (task.getId() > manifestLastId) {
+            putManifest(values, getPath());
+        }
+        putAll(values);
+    }
+
+    /**
+     * Removes the keys of the removed tasks in a single request.
+     */
+    @Override
+    void onTasksRemoved(Collection<Long> ids) {
+        final List<String> removedKeys = new ArrayList<>();
+        for (Long id : ids) {
+            for (Type type : Type.values()) {
+                final String key = getEntityKey(getPath(), type, id);
+                if (versions.containsKey(key)) {
+                    removedKeys.add(key);
+                }
+            }
+        }
+        putAll(Map.of(), removedKeys);
+    }
+
+    @Override
+    void onTaskViewed(Task task) {
+        if (task != null) {
+            put(getPath() + "/" + HISTORY_KEY, getHistoryJson());
+        }
     }
 
+    /**
+     * Resends the parent, since an {@link Epic} left without subtasks keeps the status it has in memory.
+     */
+    @Override
+    public void removeSubtask(long id) {
+        final Subtask subtask = subtasks.get(id);
+        super.removeSubtask(id);
+        if (subtask != null && epics.containsKey(subtask.getParentId())) {
+            onTaskSaved(epics.get(subtask.getParentId()));
+        }
+    }
+
+    @Override
+    public void removeAllSubtaskObjects() {
+        final Set<Long> parentIds = subtasks.values().stream().map(Subtask::getParentId).collect(Collectors.toSet());
+        super.removeAllSubtaskObjects();
+        final Map<String, String> values = new LinkedHashMap<>();
+        for (Long parentId : parentIds) {
+            if (epics.containsKey(parentId)) {
+                putEntity(values, getPath(), epics.get(parentId));
+            }
+        }
+        putAll(values);
+    }
+
+    /**
+     * Closes the history log and stops threads of the KV server client.
+     */
+    @Override
+    public void close() {
+        super.close();
+        client.close();
+    }
+
+    /**
+     * Returns the manager with the tasks saved under the given key prefix. The manifest and the history are
+     * loaded first, then the keys of the prefix are listed and all tasks are loaded in a single request.
+     * A manifest written by earlier versions lists the tasks itself: only those are loaded, keys of the tasks
+     * removed since then are removed and the manifest is rewritten.
+     * Backups written as a single JSON document by earlier versions are loaded as well. If there is no backup,
+     * the manager starts empty.
+     *
+     * @param clientUrl {@link URI} of the KV server.
+     * @param path      key prefix of the backup.
+     * @return initialized {@link HttpTasksManager}.
+     */
     public static HttpTasksManager load(URI clientUrl, String path) throws IOException, InterruptedException {
-        String backup = new KVTaskClient(clientUrl).load(path);
-        return GSON.fromJson(backup, HttpTasksManager.class);
+        final HttpTasksManager manager = new HttpTasksManager(clientUrl, path);
+        try {
+            return load(manager, path);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            manager.close();
+            throw e;
+        }
+    }
+
+    private static HttpTasksManager load(HttpTasksManager manager, String path)
+            throws IOException, InterruptedException {
+        final String manifestKey = path + "/" + MANIFEST_KEY;
+        final String historyKey = path + "/" + HISTORY_KEY;
+        final Map<String, String> header = manager.loadVersioned(List.of(manifestKey, historyKey));
+        if (!header.containsKey(manifestKey)) {
+            final String backup = manager.client.load(path);
+            return backup != null ? loadDocument(manager.client, backup) : manager;
+        }
+        final Manifest manifest = GSON.fromJson(header.get(manifestKey), Manifest.class);
+        final boolean listed = manifest.tasks != null || manifest.epics != null || manifest.subtasks != null;
+        final List<String> storedKeys = manager.client.keys(path + "/");
+        final Map<String, Class<? extends Task>> keys = new LinkedHashMap<>();
+        final List<String> staleKeys = new ArrayList<>();
+        if (listed) {
+            addEntityKeys(keys, path, Type.EPIC, manifest.epics, Epic.class);
+            addEntityKeys(keys, path, Type.TASK, manifest.tasks, Task.class);
+            addEntityKeys(keys, path, Type.SUBTASK, manifest.subtasks, Subtask.class);
+        }
+        for (Type type : List.of(Type.EPIC, Type.TASK, Type.SUBTASK)) {
+            for (String key : storedKeys) {
+                if (getEntityType(path, key) != type) {
+                    continue;
+                }
+                if (!listed) {
+                    keys.put(key, getEntityClass(type));
+                } else if (!keys.containsKey(key)) {
+                    staleKeys.add(key);
+                }
+            }
+        }
+        final Map<String, String> entities = manager.loadVersioned(keys.keySet());
+        final TasksSnapshot snapshot = new TasksSnapshot();
+        for (Map.Entry<String, Class<? extends Task>> key : keys.entrySet()) {
+            final String json = entities.get(key.getKey());
+            if (json != null) {
+                snapshot.put(ENTITY_GSON.fromJson(json, key.getValue()));
+            }
+        }
+        if (header.containsKey(historyKey)) {
+            for (long id : GSON.fromJson(header.get(historyKey), long[].class)) {
+                snapshot.view(id);
+            }
+        }
+        snapshot.setReservedId(manifest.lastId);
+        manager.restore(snapshot);
+        manager.manifestLastId = manifest.lastId;
+        if (listed) {
+            final Map<String, String> values = new LinkedHashMap<>();
+            manager.putManifest(values, path);
+            manager.putAll(values, staleKeys);
+        }
+        return manager;
+    }
+
+    private static HttpTasksManager loadDocument(KVTaskClient client, String backup) {
+        HttpTasksManager manager = GSON.fromJson(backup, HttpTasksManager.class);
+        /* The saved client has no connection, the registered one is reused */
+        manager.client = client;
+        manager.versions = new HashMap<>();
+        manager.rebuildTimeSlots();
+        return manager;
+    }
+
+    private static void addEntityKeys(Map<String, Class<? extends Task>> keys, String path, Type type, long[] ids,
+                                      Class<? extends Task> taskClass) {
+        if (ids == null) {
+            return;
+        }
+        for (long id : ids) {
+            keys.put(getEntityKey(path, type, id), taskClass);
+        }
+    }
+
+    private static void putEntity(Map<String, String> values, String path, Task task) {
+        values.put(getEntityKey(path, task.getType(), task.getId()), ENTITY_GSON.toJson(task));
+    }
+
+    private String getHistoryJson() {
+        return GSON.toJson(getHistory().stream().map(Task::getId).toArray());
+    }
+
+    private void putManifest(Map<String, String> values, String path) {
+        final Manifest manifest = new Manifest();
+        manifest.lastId = idManager instanceof BlockIdManager ? ((BlockIdManager) idManager).getLastIssuedId() : 0L;
+        values.put(path + "/" + MANIFEST_KEY, ENTITY_GSON.toJson(manifest));
+        if (path.equals(getPath())) {
+            manifestLastId = manifest.lastId;
+        }
+    }
+
+    private void put(String key, String json) {
+        try {
+            client.put(key, json);
+        } catch (IOException | InterruptedException e) {
+            throw new ManagerSaveException(e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the values in a single request, values this manager has loaded or saved before only if they still have
+     * the same versions, and the others only if they do not exist yet.
+     *
+     * @throws VersionConflictException if somebody else has changed the values, nothing is saved then.
+     */
+    private void putAll(Map<String, String> values) {
+        putAll(values, List.of());
+    }
+
+    /**
+     * Saves the values and removes the keys in a single request, see {@link #putAll(Map)}.
+     *
+     * @throws VersionConflictException if somebody else has changed the values, nothing is changed then.
+     */
+    private void putAll(Map<String, String> values, Collection<String> removedKeys) {
+        final Map<String, Long> expectedVersions = new HashMap<>();
+        for (String key : values.keySet()) {
+            if (!isHistoryKey(key)) {
+                expectedVersions.put(key, versions.getOrDefault(key, KVEntry.NO_VERSION));
+            }
+        }
+        for (String key : removedKeys) {
+            if (versions.containsKey(key)) {
+                expectedVersions.put(key, versions.get(key));
+            }
+        }
+        try {
+            client.putAllIfVersions(values, removedKeys, expectedVersions).forEach(this::setVersion);
+        } catch (IOException | InterruptedException e) {
+            throw new ManagerSaveException(e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the values in a single request and remembers their versions.
+     */
+    private Map<String, String> loadVersioned(Collection<String> keys) throws IOException, InterruptedException {
+        final Map<String, String> values = new HashMap<>();
+        for (Map.Entry<String, KVTaskClient.VersionedValue> entry : client.loadAllVersioned(keys).entrySet()) {
+            values.put(entry.getKey(), entry.getValue().getValue());
+            setVersion(entry.getKey(), entry.getValue().getVersion());
+        }
+        return values;
+    }
+
+    private void setVersion(String key, Long version) {
+        if (version == KVEntry.NO_VERSION) {
+            versions.remove(key);
+        } else if (!isHistoryKey(key)) {
+            versions.put(key, version);
+        }
+    }
+
+    private static boolean isHistoryKey(String key) {
+        return key.endsWith("/" + HISTORY_KEY);
+    }
+
+    private static String getEntityKey(String path, Type type, long id) {
+        return path + "/" + type.name().toLowerCase() + "/" + id;
+    }
+
+    /**
+     * Returns the type of the task saved under the key.
+     *
+     * @return {@link Type} or null if the key is not a key of a task under the prefix.
+     */
+    private static Type getEntityType(String path, String key) {
+        if (!key.startsWith(path + "/")) {
+            return null;
+        }
+        final String[] parts = key.substring(path.length() + 1).split("/", -1);
+        if (parts.length != 2 || parts[1].isEmpty() || !parts[1].chars().allMatch(Character::isDigit)) {
+            return null;
+        }
+        for (Type type : Type.values()) {
+            if (type.name().toLowerCase().equals(parts[0])) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private static Class<? extends Task> getEntityClass(Type type) {
+        switch (type) {
+            case EPIC:
+                return Epic.class;
+            case SUBTASK:
+                return Subtask.class;
+            default:
+                return Task.class;
+        }
+    }
+
+    /**
+     * The last issued ID. Manifests of earlier versions also list IDs of the stored tasks.
+     */
+    private static class Manifest {
+        long lastId;
+        long[] tasks;
+        long[] epics;
+        long[] subtasks;
     }
 }
@@ -3,20 +3,19 @@ package org.kamenkov.java_kanban.managers;
 import org.kamenkov.java_kanban.task.Task;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class InMemoryHistoryManager implements HistoryManager {
 
-    private final Map<Long, Node> nodeMap = new HashMap<>();
+    private final LongHashMap<Node> nodeMap = new LongHashMap<>();
     private Node first;
     private Node last;
 
     @Override
     public void add(Task task) {
-        if (nodeMap.containsKey(task.getId())) {
-            remove(task.getId());
+        final Node node = nodeMap.remove(task.getId().longValue());
+        if (node != null) {
+            removeNode(node);
         }
         linkLast(task);
     }
@@ -48,7 +47,7 @@ public class InMemoryHistoryManager implements HistoryManager {
     private void linkLast(Task task) {
         final Node oldTail = last;
         final Node newNode = new Node(oldTail, task, null);
-        nodeMap.put(task.getId(), newNode);
+        nodeMap.put(task.getId().longValue(), newNode);
         last = newNode;
         if (oldTail == null) {
             first = newNode;
@@ -75,7 +74,7 @@ public class InMemoryHistoryManager implements HistoryManager {
         if (next == null) {
             last = prev;
         } else {
-            next.prev = next;
+            next.prev = prev;
         }
     }
 
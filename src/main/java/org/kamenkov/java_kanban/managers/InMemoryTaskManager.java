@@ -4,7 +4,6 @@ import org.kamenkov.java_kanban.task.Epic;
 import org.kamenkov.java_kanban.task.Subtask;
 import org.kamenkov.java_kanban.task.Task;
 
-import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -21,17 +20,18 @@ public class InMemoryTaskManager implements TaskManager {
     IdManager idManager;
     HistoryManager historyManager;
     /* Different maps for different types */
-    final Map<Long, Task> tasks;
-    final Map<Long, Epic> epics;
-    final Map<Long, Subtask> subtasks;
+    final LongHashMap<Task> tasks;
+    final LongHashMap<Epic> epics;
+    final LongHashMap<Subtask> subtasks;
     final Set<Task> prioritizedTasks = new TreeSet<>(new StartDateComparator());
+    transient TimeSlotIndex timeSlots = new TimeSlotIndex();
 
     public InMemoryTaskManager() {
         idManager = Managers.getDefaultIdManager();
         historyManager = Managers.getDefaultHistoryManager();
-        tasks = new HashMap<>();
-        epics = new HashMap<>();
-        subtasks = new HashMap<>();
+        tasks = new LongHashMap<>();
+        epics = new LongHashMap<>();
+        subtasks = new LongHashMap<>();
     }
 
     @Override
@@ -49,8 +49,17 @@ public class InMemoryTaskManager implements TaskManager {
         return getValuesFromMap(subtasks);
     }
 
+    /**
+     * Returns task object by its ID, the lookup is made by {@link #getTaskObjectById(long)}, so subclasses
+     * override only the primitive method.
+     */
     @Override
     public Task getTaskObjectById(Long id) {
+        return id == null ? null : getTaskObjectById(id.longValue());
+    }
+
+    @Override
+    public Task getTaskObjectById(long id) {
         Task task = tasks.get(id);
         if (task == null) {
             return null;
@@ -61,6 +70,11 @@ public class InMemoryTaskManager implements TaskManager {
 
     @Override
     public Epic getEpicObjectById(Long id) {
+        return id == null ? null : getEpicObjectById(id.longValue());
+    }
+
+    @Override
+    public Epic getEpicObjectById(long id) {
         Epic task = epics.get(id);
         if (task == null) {
             return null;
@@ -71,6 +85,11 @@ public class InMemoryTaskManager implements TaskManager {
 
     @Override
     public Subtask getSubtaskObjectById(Long id) {
+        return id == null ? null : getSubtaskObjectById(id.longValue());
+    }
+
+    @Override
+    public Subtask getSubtaskObjectById(long id) {
         Subtask task = subtasks.get(id);
         if (task == null) {
             return null;
@@ -84,6 +103,7 @@ public class InMemoryTaskManager implements TaskManager {
         for (Map.Entry<Long, Task> entry : tasks.entrySet()) {
             historyManager.remove(entry.getKey());
             prioritizedTasks.remove(entry.getValue());
+            timeSlots.remove(entry.getKey());
         }
         tasks.clear();
     }
@@ -104,11 +124,11 @@ public class InMemoryTaskManager implements TaskManager {
         for (Map.Entry<Long, Subtask> entry : subtasks.entrySet()) {
             historyManager.remove(entry.getKey());
             prioritizedTasks.remove(entry.getValue());
+            timeSlots.remove(entry.getKey());
         }
         subtasks.clear();
         for (Long id : parentIds) {
-            getEpicObjectById(id).recalculateStatus();
-            getEpicObjectById(id).recalculateDates();
+            getEpicObjectById(id).removeAllSubtasks();
         }
     }
 
@@ -135,7 +155,6 @@ public class InMemoryTaskManager implements TaskManager {
         if (intersectionTask.isPresent()) {
             throw new IllegalArgumentException(TIME_INTERSECTION_FOUND + intersectionTask.get().getId());
         }
-        parentObject.addSubtask(subtask);
         return createTask(subtask, subtasks);
     }
 
@@ -157,32 +176,57 @@ public class InMemoryTaskManager implements TaskManager {
     public void updateSubtask(Subtask subtask, Long id) {
         Epic parentObject = getParentObject(subtask);
         Objects.requireNonNull(parentObject, PARENT_CANNOT_BE_NULL);
+        Objects.requireNonNull(id, ID_CANNOT_BE_NULL);
+        if (subtasks.containsKey(id)) {
+            subtask.setId(id);
+        }
         final Optional<Task> intersectionTask = getFirstIntersection(subtask);
         if (intersectionTask.isPresent()) {
             throw new IllegalArgumentException(TIME_INTERSECTION_FOUND + intersectionTask.get().getId());
         }
-        parentObject.recalculateStatus();
-        parentObject.recalculateDates();
         updateTask(subtask, subtasks, id);
+        if (subtasks.get(id) == subtask) {
+            parentObject.updateSubtask(subtask);
+        }
     }
 
+    /**
+     * Removes the task by {@link #removeTask(long)}, so subclasses override only the primitive method.
+     */
     @Override
     public void removeTask(Long id) {
+        if (id != null) {
+            removeTask(id.longValue());
+        }
+    }
+
+    @Override
+    public void removeTask(long id) {
         removeEntryFromMap(tasks, id);
     }
 
     @Override
     public void removeEpic(Long id) {
+        removeEpic(Objects.requireNonNull(id, ID_CANNOT_BE_NULL).longValue());
+    }
+
+    @Override
+    public void removeEpic(long id) {
         Epic epic = epics.get(id);
         Objects.requireNonNull(epic, OBJECT_CANNOT_BE_NULL);
-        for (Subtask subtask : epic.getSubtaskObjects()) {
-            removeEntryFromMap(subtasks, subtask.getId());
-        }
+        final List<Long> subtaskIds = epic.getSubtaskObjects().stream().map(Task::getId).collect(Collectors.toList());
+        removeEntriesFromMap(subtasks, subtaskIds);
+        epic.removeAllSubtasks();
         removeEntryFromMap(epics, id);
     }
 
     @Override
     public void removeSubtask(Long id) {
+        removeSubtask(Objects.requireNonNull(id, ID_CANNOT_BE_NULL).longValue());
+    }
+
+    @Override
+    public void removeSubtask(long id) {
         Subtask subtask = getSubtaskObjectById(id);
         Epic parentObject = getParentObject(subtask);
         Objects.requireNonNull(parentObject, PARENT_CANNOT_BE_NULL);
@@ -192,6 +236,11 @@ public class InMemoryTaskManager implements TaskManager {
 
     @Override
     public Collection<Subtask> getSubtaskObjectsByParentId(Long id) {
+        return id == null ? null : getSubtaskObjectsByParentId(id.longValue());
+    }
+
+    @Override
+    public Collection<Subtask> getSubtaskObjectsByParentId(long id) {
         Epic epic = getEpicObjectById(id);
         return epic == null ? null : epic.getSubtaskObjects();
     }
@@ -223,8 +272,13 @@ public class InMemoryTaskManager implements TaskManager {
         }
         final Long id = idManager.getLastId();
         taskObject.setId(id);
+        if (map == subtasks) {
+            /* Subtasks are indexed by ID in the parent, so they join it only once the ID is assigned */
+            getParentObject((Subtask) taskObject).addSubtask((Subtask) taskObject);
+        }
         map.put(id, taskObject);
         prioritizedTasks.add(taskObject);
+        timeSlots.add(taskObject);
         return taskObject.getId();
     }
 
@@ -243,6 +297,7 @@ public class InMemoryTaskManager implements TaskManager {
         if (map.containsKey(id)) {
             map.put(id, taskObject);
             prioritizedTasks.add(taskObject);
+            timeSlots.add(taskObject);
         }
     }
 
@@ -261,10 +316,29 @@ public class InMemoryTaskManager implements TaskManager {
      *
      * @param map from which map values should be removed.
      */
-    <T extends Task> void removeEntryFromMap(Map<Long, T> map, Long id) {
+    <T extends Task> void removeEntryFromMap(LongHashMap<T> map, long id) {
+        final T removed = map.remove(id);
+        if (removed == null) {
+            return;
+        }
         historyManager.remove(id);
-        prioritizedTasks.remove(map.get(id));
-        map.remove(id);
+        prioritizedTasks.remove(removed);
+        timeSlots.remove(id);
+    }
+
+    /**
+     * Removes tasks with the given IDs from the given map at once.
+     *
+     * @param map from which map values should be removed.
+     * @param ids IDs of the tasks that should be removed.
+     */
+    <T extends Task> void removeEntriesFromMap(Map<Long, T> map, Collection<Long> ids) {
+        for (Long id : ids) {
+            historyManager.remove(id);
+            prioritizedTasks.remove(map.get(id));
+            timeSlots.remove(id);
+            map.remove(id);
+        }
     }
 
     /**
@@ -274,16 +348,17 @@ public class InMemoryTaskManager implements TaskManager {
      * @return {@link Optional} with the first found {@link Task} that intersects with or an empty {@link Optional}.
      */
     private Optional<Task> getFirstIntersection(Task task) {
-        if (task.getStartDate() == null) {
-            return Optional.empty();
-        }
-        return prioritizedTasks.stream()
-                .filter(t -> !t.equals(task))
-                .filter(t -> !(t instanceof Epic))
-                .filter(t -> t.getStartDate() != null)
-                .filter(t -> t.getEndDate().isAfter(task.getStartDate())
-                        && t.getStartDate().isBefore(task.getEndDate()))
-                .findFirst();
+        return timeSlots.findFirstOverlap(task);
+    }
+
+    /**
+     * Rebuilds the {@link TimeSlotIndex} from the stored tasks and subtasks.
+     * Should be called when tasks were put to memory bypassing {@link #createTask(Task, Map)}.
+     */
+    void rebuildTimeSlots() {
+        timeSlots = new TimeSlotIndex();
+        tasks.values().forEach(timeSlots::add);
+        subtasks.values().forEach(timeSlots::add);
     }
 
     /**
@@ -292,13 +367,11 @@ public class InMemoryTaskManager implements TaskManager {
     private static class StartDateComparator implements Comparator<Task> {
         @Override
         public int compare(Task o1, Task o2) {
-            LocalDateTime o1sd = o1.getStartDate();
-            LocalDateTime o2sd = o2.getStartDate();
-            if (o1sd != null) {
-                if (o2sd == null) {
+            if (o1.hasStartDate()) {
+                if (!o2.hasStartDate()) {
                     return -1;
                 } else {
-                    return o1sd.compareTo(o2sd);
+                    return Long.compare(o1.getStartEpochSecond(), o2.getStartEpochSecond());
                 }
             }
             return o1.getId().compareTo(o2.getId());
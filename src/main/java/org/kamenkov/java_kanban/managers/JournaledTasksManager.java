@@ -0,0 +1,120 @@
+package org.kamenkov.java_kanban.managers;
+
+import org.kamenkov.java_kanban.task.Task;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * {@link FileBackedTasksManager} that appends every mutation to a journal instead of rewriting the backup file.
+ * Views are kept in the history log of {@link FileBackedTasksManager}.
+ * The backup file is rewritten only on checkpoints: when the manager is opened and after every
+ * {@code checkpointInterval} journal records, after that the journal is truncated.
+ * Records that were not forced to the storage device by the {@link FsyncPolicy} yet
+ * survive a crash of the process but can be lost on a power failure.
+ */
+public class JournaledTasksManager extends FileBackedTasksManager {
+
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    private final TasksJournal journal;
+    private final int checkpointInterval;
+    private int recordsSinceCheckpoint;
+
+    public JournaledTasksManager(String path, FsyncPolicy fsyncPolicy) {
+        this(path, fsyncPolicy, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Creates an empty manager, the existing backup file and journal are overwritten.
+     *
+     * @param path               path of the backup file.
+     * @param fsyncPolicy        when journal records should be forced to the storage device.
+     * @param checkpointInterval amount of journal records between checkpoints.
+     */
+    public JournaledTasksManager(String path, FsyncPolicy fsyncPolicy, int checkpointInterval) {
+        this(path, fsyncPolicy, checkpointInterval, true);
+    }
+
+    private JournaledTasksManager(String path, FsyncPolicy fsyncPolicy, int checkpointInterval, boolean checkpoint) {
+        super(path);
+        if (checkpointInterval <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval should be positive");
+        }
+        this.checkpointInterval = checkpointInterval;
+        journal = new TasksJournal(getJournalPath(getPath()), fsyncPolicy);
+        if (checkpoint) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Returns new {@link JournaledTasksManager} with all tasks from the backup file and its journal.
+     * The loaded state is written as a checkpoint right away.
+     *
+     * @param file        {@link File} from data should be load.
+     * @param fsyncPolicy when journal records should be forced to the storage device.
+     * @return initialized {@link JournaledTasksManager}.
+     */
+    public static JournaledTasksManager loadFromFile(File file, FsyncPolicy fsyncPolicy) {
+        TasksSnapshot snapshot = readSnapshot(file);
+        TasksJournal.replay(getJournalPath(file.getPath()), snapshot);
+        HistoryLog.replay(getHistoryPath(file.getPath()), snapshot);
+        JournaledTasksManager manager = new JournaledTasksManager(file.getPath(), fsyncPolicy,
+                DEFAULT_CHECKPOINT_INTERVAL, false);
+        manager.restore(snapshot);
+        manager.checkpoint();
+        return manager;
+    }
+
+    /**
+     * Writes all tasks and history to the backup file and truncates the journal.
+     */
+    public void checkpoint() {
+        save(getPath());
+        journal.truncate();
+        recordsSinceCheckpoint = 0;
+    }
+
+    /**
+     * Forces all journal records to the storage device and closes the journal and the history log.
+     */
+    @Override
+    public void close() {
+        journal.close();
+        super.close();
+    }
+
+    @Override
+    void onTaskSaved(Task task) {
+        if (task != null) {
+            journal.appendPut(task);
+            onRecordsAppended(1);
+        }
+    }
+
+    @Override
+    void onTasksRemoved(Collection<Long> ids) {
+        int records = 0;
+        for (Long id : ids) {
+            if (id != null) {
+                journal.appendRemove(id);
+                records++;
+            }
+        }
+        onRecordsAppended(records);
+    }
+
+    private void onRecordsAppended(int records) {
+        recordsSinceCheckpoint += records;
+        if (recordsSinceCheckpoint >= checkpointInterval) {
+            checkpoint();
+        }
+    }
+
+    private static Path getJournalPath(String path) {
+        return Path.of(path + JOURNAL_SUFFIX);
+    }
+}
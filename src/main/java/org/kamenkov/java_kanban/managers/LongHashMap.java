@@ -0,0 +1,364 @@
+package org.kamenkov.java_kanban.managers;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Insertion-ordered {@link Map} with primitive {@code long} keys.
+ * <p>
+ * Keys and values are kept in dense arrays in insertion order, an open-addressing table with linear probing
+ * points to their positions. An entry takes a {@code long}, a reference and two table slots instead of
+ * a boxed key and an entry object of {@link java.util.HashMap}. Removed entries leave holes that are skipped
+ * by iteration and squeezed out once they take half of the arrays. Null values are not permitted.
+ * <p>
+ * The boxed {@link Map} methods are kept for the callers that already hold {@link Long} keys, they do not
+ * allocate on lookups.
+ *
+ * @param <V> type of the values.
+ */
+class LongHashMap<V> extends AbstractMap<Long, V> {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private Object[] values;
+    /* Positions in the dense arrays plus one, zero is an empty slot. */
+    private int[] table;
+    private int end;
+    private int size;
+    private int modCount;
+
+    LongHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates the map that can hold the given number of entries without resizing.
+     *
+     * @param expectedSize expected number of entries.
+     */
+    LongHashMap(int expectedSize) {
+        final int capacity = capacityFor(expectedSize);
+        keys = new long[capacity];
+        values = new Object[capacity];
+        table = new int[capacity * 2];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value mapped to the key.
+     *
+     * @param key the key.
+     * @return value or null if there is no mapping for the key.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        final int position = position(key);
+        return position < 0 ? null : (V) values[position];
+    }
+
+    public boolean containsKey(long key) {
+        return position(key) >= 0;
+    }
+
+    /**
+     * Maps the value to the key. A new key is placed after all other keys, a known key keeps its place.
+     *
+     * @param key   the key.
+     * @param value the value, not null.
+     * @return previous value or null if there was no mapping for the key.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        Objects.requireNonNull(value);
+        final int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != 0) {
+            final int position = table[slot] - 1;
+            if (keys[position] == key) {
+                final V previous = (V) values[position];
+                values[position] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (end == keys.length) {
+            grow();
+            return put(key, value);
+        }
+        keys[end] = key;
+        values[end] = value;
+        table[slot] = end + 1;
+        end++;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    /**
+     * Removes the mapping for the key.
+     *
+     * @param key the key.
+     * @return removed value or null if there was no mapping for the key.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        final int position = position(key);
+        if (position < 0) {
+            return null;
+        }
+        final V removed = (V) values[position];
+        removeAt(position);
+        if (end - size > end / 2) {
+            compact();
+        }
+        return removed;
+    }
+
+    @Override
+    public V get(Object key) {
+        return key instanceof Long ? get(((Long) key).longValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Long && containsKey(((Long) key).longValue());
+    }
+
+    @Override
+    public V put(Long key, V value) {
+        return put(key.longValue(), value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return key instanceof Long ? remove(((Long) key).longValue()) : null;
+    }
+
+    @Override
+    public void clear() {
+        keys = new long[MIN_CAPACITY];
+        values = new Object[MIN_CAPACITY];
+        table = new int[MIN_CAPACITY * 2];
+        end = 0;
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new PositionIterator<>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    V get(int position) {
+                        return (V) values[position];
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Set<Long> keySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Long> iterator() {
+                return new PositionIterator<>() {
+                    @Override
+                    Long get(int position) {
+                        return keys[position];
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<Long, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<Long, V>> iterator() {
+                return new PositionIterator<>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    Entry<Long, V> get(int position) {
+                        return new SimpleImmutableEntry<>(keys[position], (V) values[position]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int position(long key) {
+        final int mask = table.length - 1;
+        for (int slot = hash(key) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[table[slot] - 1] == key) {
+                return table[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the entry leaving a hole in the dense arrays, the following entries of its probe sequence are
+     * shifted back in the table.
+     */
+    private void removeAt(int position) {
+        final int mask = table.length - 1;
+        int hole = hash(keys[position]) & mask;
+        while (table[hole] != position + 1) {
+            hole = (hole + 1) & mask;
+        }
+        for (int next = (hole + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            final int home = hash(keys[table[next] - 1]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table[hole] = table[next];
+                hole = next;
+            }
+        }
+        table[hole] = 0;
+        values[position] = null;
+        size--;
+        modCount++;
+        if (position == end - 1) {
+            end--;
+        }
+    }
+
+    private void compact() {
+        int target = 0;
+        for (int i = 0; i < end; i++) {
+            if (values[i] != null) {
+                keys[target] = keys[i];
+                values[target] = values[i];
+                target++;
+            }
+        }
+        Arrays.fill(values, target, end, null);
+        end = target;
+        rebuildTable(table.length);
+    }
+
+    private void grow() {
+        if (end - size > end / 4) {
+            compact();
+            return;
+        }
+        keys = Arrays.copyOf(keys, keys.length * 2);
+        values = Arrays.copyOf(values, values.length * 2);
+        rebuildTable(keys.length * 2);
+    }
+
+    private void rebuildTable(int capacity) {
+        table = new int[capacity];
+        final int mask = capacity - 1;
+        for (int i = 0; i < end; i++) {
+            if (values[i] != null) {
+                int slot = hash(keys[i]) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = i + 1;
+            }
+        }
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Iterates over the dense arrays in insertion order skipping holes.
+     */
+    private abstract class PositionIterator<T> implements Iterator<T> {
+
+        private int next = skipHoles(0);
+        private int last = -1;
+        private int expectedModCount = modCount;
+
+        abstract T get(int position);
+
+        @Override
+        public boolean hasNext() {
+            return next < end;
+        }
+
+        @Override
+        public T next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= end) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = skipHoles(next + 1);
+            return get(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(last);
+            expectedModCount = modCount;
+            last = -1;
+        }
+
+        private int skipHoles(int position) {
+            while (position < end && values[position] == null) {
+                position++;
+            }
+            return position;
+        }
+    }
+}
@@ -7,8 +7,20 @@ public class Managers {
 
     private Managers() {}
 
+    /**
+     * Returns manager that keeps its tasks on the KV server. The tasks already stored there are loaded first,
+     * so writes of the manager carry their current versions.
+     */
     public static TaskManager getDefault() throws IOException, InterruptedException {
-        return new HttpTasksManager(URI.create("http://localhost:8078"));
+        return HttpTasksManager.load(URI.create("http://localhost:8078"), HttpTasksManager.DEFAULT_PATH);
+    }
+
+    /**
+     * Returns thread-safe manager that keeps a separate history for every user of the
+     * {@link org.kamenkov.java_kanban.servers.HttpTaskServer}. Its tasks are not saved anywhere.
+     */
+    public static TaskManager getMultiUserTaskManager() {
+        return new ConcurrentTaskManager(new PartitionedHistoryManager());
     }
 
     public static HistoryManager getDefaultHistoryManager() {
@@ -16,6 +28,6 @@ public class Managers {
     }
 
     public static IdManager getDefaultIdManager() {
-        return new InMemoryIdManager();
+        return new BlockIdManager();
     }
 }
@@ -0,0 +1,234 @@
+package org.kamenkov.java_kanban.managers;
+
+import org.kamenkov.java_kanban.task.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link HistoryManager} that keeps a separate history for every user.
+ * <p>
+ * The user is taken from the current thread, servers set it with {@link #setCurrentPartition(String)} for the
+ * time of a request; views made without user go to the shared {@link #DEFAULT_PARTITION}. Every partition is
+ * a {@link ConcurrentHistoryManager} with its own capacity, so users do not contend with each other.
+ * Partitions that have not been used for the idle timeout are evicted, and when there are more partitions than
+ * allowed, the least recently used ones are evicted as well.
+ * <p>
+ * Removal of a task does not visit the partitions: its ID is added to a log of removals, and every partition applies
+ * the removals it has not seen yet before it is read or added to. Removals already applied by all partitions are
+ * dropped from the log by the sweep that evicts idle partitions.
+ * <p>
+ * {@link Managers#getMultiUserTaskManager()} wires it into a {@link ConcurrentTaskManager}, and
+ * {@link org.kamenkov.java_kanban.servers.HttpTaskServer} sets the user of every request. Managers that save their
+ * history keep a single one, so they are not meant to be used with it.
+ */
+public class PartitionedHistoryManager implements HistoryManager {
+
+    public static final String DEFAULT_PARTITION = "";
+    public static final int DEFAULT_PARTITION_CAPACITY = 100;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    public static final int DEFAULT_MAX_PARTITIONS = 10_000;
+
+    private static final ThreadLocal<String> currentPartition = new ThreadLocal<>();
+
+    private final int partitionCapacity;
+    private final long idleTimeoutNanos;
+    private final int maxPartitions;
+    private final LongSupplier clock;
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep;
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    /* IDs of removed tasks by the number of the removal */
+    private final NavigableMap<Long, Long> removals = new ConcurrentSkipListMap<>();
+    /* Number of the last removal, all removals up to it are in the log */
+    private volatile long removalCount;
+
+    public PartitionedHistoryManager() {
+        this(DEFAULT_PARTITION_CAPACITY, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_MAX_PARTITIONS);
+    }
+
+    /**
+     * Creates the history with the given limits.
+     *
+     * @param partitionCapacity maximum number of tasks in the history of a single user.
+     * @param idleTimeoutMillis time after which the history of an inactive user is evicted.
+     * @param maxPartitions     maximum number of users whose history is kept.
+     */
+    public PartitionedHistoryManager(int partitionCapacity, long idleTimeoutMillis, int maxPartitions) {
+        this(partitionCapacity, idleTimeoutMillis, maxPartitions, System::nanoTime);
+    }
+
+    PartitionedHistoryManager(int partitionCapacity, long idleTimeoutMillis, int maxPartitions, LongSupplier clock) {
+        if (partitionCapacity <= 0 || idleTimeoutMillis <= 0 || maxPartitions <= 0) {
+            throw new IllegalArgumentException("Limits of the history should be positive");
+        }
+        this.partitionCapacity = partitionCapacity;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.maxPartitions = maxPartitions;
+        this.clock = clock;
+        this.nextSweep = new AtomicLong(clock.getAsLong() + idleTimeoutNanos);
+    }
+
+    /**
+     * Sets the user whose history is used by the current thread.
+     *
+     * @param partition key of the user, e.g. a token; null means the shared history.
+     */
+    public static void setCurrentPartition(String partition) {
+        if (partition == null) {
+            currentPartition.remove();
+        } else {
+            currentPartition.set(partition);
+        }
+    }
+
+    /**
+     * Resets the current thread to the shared history.
+     */
+    public static void clearCurrentPartition() {
+        currentPartition.remove();
+    }
+
+    @Override
+    public void add(Task task) {
+        final long now = clock.getAsLong();
+        final String key = Objects.requireNonNullElse(currentPartition.get(), DEFAULT_PARTITION);
+        Partition partition;
+        do {
+            partition = partitions.computeIfAbsent(key,
+                    ignored -> new Partition(new ConcurrentHistoryManager(partitionCapacity), now, removalCount));
+            partition.lastAccess = now;
+            applyRemovals(partition);
+            partition.history.add(task);
+            // a sweep may have evicted the partition in the meantime, then the view goes to a new one
+        } while (partitions.get(key) != partition);
+        if (now - nextSweep.get() >= 0 || partitions.size() > maxPartitions) {
+            evictIdlePartitions(now);
+        }
+    }
+
+    /**
+     * Adds the ID to the log of removals, partitions remove the task when they are used next time.
+     */
+    @Override
+    public void remove(Long id) {
+        synchronized (removals) {
+            removals.put(removalCount + 1, id);
+            removalCount++;
+        }
+        final long now = clock.getAsLong();
+        if (now - nextSweep.get() >= 0) {
+            evictIdlePartitions(now);
+        }
+    }
+
+    /**
+     * Returns the history of the current user.
+     *
+     * @return {@link List} of {@link Task} or empty {@link List}
+     */
+    @Override
+    public List<Task> getHistory() {
+        final String key = Objects.requireNonNullElse(currentPartition.get(), DEFAULT_PARTITION);
+        final Partition partition = partitions.get(key);
+        if (partition == null) {
+            return new ArrayList<>();
+        }
+        partition.lastAccess = clock.getAsLong();
+        applyRemovals(partition);
+        return partition.history.getHistory();
+    }
+
+    /**
+     * Returns the number of users whose history is kept.
+     *
+     * @return number of partitions.
+     */
+    int getPartitionCount() {
+        return partitions.size();
+    }
+
+    /**
+     * Returns the number of removals kept in the log.
+     *
+     * @return number of removals.
+     */
+    int getPendingRemovalCount() {
+        return removals.size();
+    }
+
+    /**
+     * Removes from the partition the tasks removed since it was used last time. Removal is idempotent, so
+     * threads that apply the same removals concurrently do no harm.
+     */
+    private void applyRemovals(Partition partition) {
+        final long count = removalCount;
+        final long applied = partition.appliedRemovals;
+        if (applied >= count) {
+            return;
+        }
+        for (Long id : removals.subMap(applied, false, count, true).values()) {
+            partition.history.remove(id);
+        }
+        partition.appliedRemovals = count;
+    }
+
+    /**
+     * Evicts partitions that have been idle for the timeout, then the least recently used ones if there are still
+     * too many. Only one thread sweeps at a time, the others go on.
+     *
+     * @param now current time of the clock.
+     */
+    private void evictIdlePartitions(long now) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            nextSweep.set(now + idleTimeoutNanos / 2);
+            partitions.entrySet().removeIf(entry -> now - entry.getValue().lastAccess >= idleTimeoutNanos);
+            final int excess = partitions.size() - maxPartitions;
+            if (excess > 0) {
+                // evict a tenth more, so new users do not start a sweep one by one
+                final List<Map.Entry<String, Long>> lastAccesses = new ArrayList<>();
+                partitions.forEach((key, partition) -> lastAccesses.add(Map.entry(key, partition.lastAccess)));
+                lastAccesses.sort(Map.Entry.comparingByValue());
+                lastAccesses.stream()
+                        .limit(excess + maxPartitions / 10)
+                        .map(Map.Entry::getKey)
+                        .forEach(partitions::remove);
+            }
+            long applied = removalCount;
+            for (Partition partition : partitions.values()) {
+                applied = Math.min(applied, partition.appliedRemovals);
+            }
+            removals.headMap(applied, true).clear();
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * History of a single user.
+     */
+    private static class Partition {
+        final HistoryManager history;
+        volatile long lastAccess;
+        /* Number of the last removal applied to the history */
+        volatile long appliedRemovals;
+
+        Partition(HistoryManager history, long lastAccess, long appliedRemovals) {
+            this.history = history;
+            this.lastAccess = lastAccess;
+            this.appliedRemovals = appliedRemovals;
+        }
+    }
+}
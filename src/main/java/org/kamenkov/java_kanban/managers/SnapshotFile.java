@@ -0,0 +1,150 @@
+package org.kamenkov.java_kanban.managers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Crash-safe writes of the backup file.
+ * The content is written to a temporary file, forced to the storage device and renamed over the backup file,
+ * so the backup file always contains either the previous or the new snapshot.
+ * <p>
+ * Every backup file has a checksum file next to it with lines {@code <length> <crc32>}. The checksum of the new
+ * content is appended and forced before the backup file is replaced, so the backup matches one of the lines
+ * unless the backup file itself is damaged. Appending costs a single write instead of another replace cycle,
+ * and no state is kept between writes. Once the checksum file grows over {@value #MAX_CHECKSUM_FILE_SIZE}
+ * bytes, it is replaced by the checksum of the current backup file.
+ */
+class SnapshotFile {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String CHECKSUM_SUFFIX = ".sum";
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_CHECKSUM_FILE_SIZE = 4096;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Atomically replaces the content of the file.
+     *
+     * @param path    path of the file.
+     * @param content new content of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    static void write(Path path, byte[] content) throws IOException {
+        final Path checksumPath = getChecksumPath(path);
+        if (!Files.exists(checksumPath) || Files.size(checksumPath) > MAX_CHECKSUM_FILE_SIZE) {
+            replace(checksumPath, Files.exists(path) ? (checksum(path) + "\n").getBytes(UTF_8) : new byte[0]);
+        }
+        try (FileChannel channel = FileChannel.open(checksumPath, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            final ByteBuffer buffer = ByteBuffer.wrap((checksum(content) + "\n").getBytes(UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        replace(path, content);
+    }
+
+    /**
+     * Checks whether the file matches one of the checksums written with it.
+     * Files without checksum file are treated as intact.
+     *
+     * @param path path of the file.
+     * @return false if the file has been damaged.
+     * @throws IOException if the file cannot be read.
+     */
+    static boolean isIntact(Path path) throws IOException {
+        final Path checksumPath = getChecksumPath(path);
+        if (!Files.exists(checksumPath)) {
+            return true;
+        }
+        return Files.readAllLines(checksumPath, UTF_8).contains(checksum(path));
+    }
+
+    /**
+     * Returns path of the checksum file that belongs to the given file.
+     *
+     * @param path path of the file.
+     * @return path of the checksum file.
+     */
+    static Path getChecksumPath(Path path) {
+        return Path.of(path + CHECKSUM_SUFFIX);
+    }
+
+    private static String checksum(Path path) throws IOException {
+        CRC32 crc = new CRC32();
+        long length = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                length += buffer.remaining();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return checksum(length, crc);
+    }
+
+    /**
+     * Atomically replaces the content of the file without a checksum.
+     *
+     * @param path    path of the file.
+     * @param content new content of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    static void replace(Path path, byte[] content) throws IOException {
+        final Path temp = Path.of(path + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(path);
+    }
+
+    /**
+     * Forces the rename to the storage device. Not every platform allows opening a directory, then the rename
+     * is left to the file system.
+     */
+    private static void syncDirectory(Path path) {
+        final Path directory = path.toAbsolutePath().getParent();
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories cannot be opened or forced on this platform
+        }
+    }
+
+    private static String checksum(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return checksum(content.length, crc);
+    }
+
+    private static String checksum(long length, CRC32 crc) {
+        return length + " " + Long.toHexString(crc.getValue());
+    }
+}
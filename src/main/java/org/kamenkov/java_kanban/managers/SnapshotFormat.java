@@ -0,0 +1,15 @@
+package org.kamenkov.java_kanban.managers;
+
+/**
+ * {@link Enum} that contains formats of the backup file.
+ */
+public enum SnapshotFormat {
+    /**
+     * Human-readable lines with comma-separated fields.
+     */
+    CSV,
+    /**
+     * Versioned binary format, see {@link BinarySnapshot}.
+     */
+    BINARY
+}
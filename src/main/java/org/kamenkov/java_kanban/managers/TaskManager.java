@@ -38,6 +38,16 @@ public interface TaskManager {
      */
     Task getTaskObjectById(Long id);
 
+    /**
+     * Returns task object by its primitive ID.
+     *
+     * @param id unique id of task.
+     * @return {@link Task}.
+     */
+    default Task getTaskObjectById(long id) {
+        return getTaskObjectById(Long.valueOf(id));
+    }
+
     /**
      * Returns epic object by its ID.
      *
@@ -46,6 +56,16 @@ public interface TaskManager {
      */
     Epic getEpicObjectById(Long id);
 
+    /**
+     * Returns epic object by its primitive ID.
+     *
+     * @param id unique id of epic.
+     * @return {@link Epic}.
+     */
+    default Epic getEpicObjectById(long id) {
+        return getEpicObjectById(Long.valueOf(id));
+    }
+
     /**
      * Returns subtask object by its ID.
      *
@@ -54,6 +74,16 @@ public interface TaskManager {
      */
     Subtask getSubtaskObjectById(Long id);
 
+    /**
+     * Returns subtask object by its primitive ID.
+     *
+     * @param id unique id of subtask.
+     * @return {@link Subtask}.
+     */
+    default Subtask getSubtaskObjectById(long id) {
+        return getSubtaskObjectById(Long.valueOf(id));
+    }
+
     /**
      * Returns all tasks ordered by their start dates.
      *
@@ -125,6 +155,15 @@ public interface TaskManager {
      */
     void removeTask(Long id);
 
+    /**
+     * Remove the {@link Task} with the given primitive ID from memory.
+     *
+     * @param id of {@link Task} should be deleted.
+     */
+    default void removeTask(long id) {
+        removeTask(Long.valueOf(id));
+    }
+
     /**
      * Remove the given {@link Epic} from memory.
      *
@@ -132,6 +171,15 @@ public interface TaskManager {
      */
     void removeEpic(Long id);
 
+    /**
+     * Remove the {@link Epic} with the given primitive ID from memory.
+     *
+     * @param id of {@link Epic} should be deleted.
+     */
+    default void removeEpic(long id) {
+        removeEpic(Long.valueOf(id));
+    }
+
     /**
      * Remove the given {@link Subtask} from memory.
      *
@@ -139,6 +187,15 @@ public interface TaskManager {
      */
     void removeSubtask(Long id);
 
+    /**
+     * Remove the {@link Subtask} with the given primitive ID from memory.
+     *
+     * @param id of {@link Subtask} should be deleted.
+     */
+    default void removeSubtask(long id) {
+        removeSubtask(Long.valueOf(id));
+    }
+
     /**
      * Returns all {@link Subtask} from given parent object.
      *
@@ -147,6 +204,16 @@ public interface TaskManager {
      */
     Collection<Subtask> getSubtaskObjectsByParentId(Long id);
 
+    /**
+     * Returns all {@link Subtask} from the parent object with the given primitive ID.
+     *
+     * @param id Epic id whose subtasks should be retrieved.
+     * @return {@link Collection} of {@link Subtask}.
+     */
+    default Collection<Subtask> getSubtaskObjectsByParentId(long id) {
+        return getSubtaskObjectsByParentId(Long.valueOf(id));
+    }
+
     /**
      * Returns a {@link Collection} of {@link Task}s that have been viewed by users.
      *
@@ -0,0 +1,179 @@
+package org.kamenkov.java_kanban.managers;
+
+import org.kamenkov.java_kanban.exceptions.ManagerSaveException;
+import org.kamenkov.java_kanban.task.Task;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Append-only journal of {@link FileBackedTasksManager} mutations.
+ * Every record is a single line: {@code PUT,<task>} or {@code DEL,<id>},
+ * where {@code <task>} has the same format as the lines of the backup file.
+ */
+class TasksJournal implements Closeable {
+
+    static final int BATCH_SIZE = 64;
+    static final long SYNC_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final String PUT = "PUT";
+    private static final String DELETE = "DEL";
+
+    private final FsyncPolicy fsyncPolicy;
+    private final FileChannel channel;
+    private int unsyncedRecords;
+    private long lastSync;
+
+    /**
+     * Opens the journal for appending, the existing records are kept.
+     *
+     * @param path        path of the journal file.
+     * @param fsyncPolicy when appended records should be forced to the storage device.
+     */
+    TasksJournal(Path path, FsyncPolicy fsyncPolicy) {
+        this.fsyncPolicy = fsyncPolicy;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new ManagerSaveException(e.getMessage());
+        }
+        lastSync = System.nanoTime();
+    }
+
+    /**
+     * Appends the record about created or updated {@link Task}.
+     *
+     * @param task {@link Task} that has been saved.
+     */
+    void appendPut(Task task) {
+        append(PUT + "," + task);
+    }
+
+    /**
+     * Appends the record about removed {@link Task}.
+     *
+     * @param id unique id of the removed {@link Task}.
+     */
+    void appendRemove(Long id) {
+        append(DELETE + "," + id);
+    }
+
+    /**
+     * Removes all records. Should be called once all of them are included in a snapshot.
+     */
+    void truncate() {
+        try {
+            channel.truncate(0);
+            channel.force(false);
+            unsyncedRecords = 0;
+            lastSync = System.nanoTime();
+        } catch (IOException e) {
+            throw new ManagerSaveException(e.getMessage());
+        }
+    }
+
+    /**
+     * Forces all appended records to the storage device.
+     */
+    void sync() {
+        try {
+            channel.force(false);
+            unsyncedRecords = 0;
+            lastSync = System.nanoTime();
+        } catch (IOException e) {
+            throw new ManagerSaveException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            sync();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Applies all complete records of the journal to the given {@link TasksSnapshot}.
+     * A record without trailing line break is treated as torn and ignored.
+     *
+     * @param path     path of the journal file.
+     * @param snapshot {@link TasksSnapshot} the records should be applied to.
+     */
+    static void replay(Path path, TasksSnapshot snapshot) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        String content;
+        try {
+            content = new String(Files.readAllBytes(path), UTF_8);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        final int end = content.lastIndexOf('\n');
+        if (end < 0) {
+            return;
+        }
+        for (String record : content.substring(0, end).split("\n")) {
+            final int separator = record.indexOf(',');
+            if (separator < 0) {
+                continue;
+            }
+            final String operation = record.substring(0, separator);
+            final String value = record.substring(separator + 1);
+            switch (operation) {
+                case PUT:
+                    snapshot.put(FileBackedTasksManager.createTaskFromString(value));
+                    break;
+                case DELETE:
+                    snapshot.remove(Long.parseLong(value));
+                    break;
+            }
+        }
+    }
+
+    private void append(String record) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap((record + "\n").getBytes(UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            unsyncedRecords++;
+            if (shouldSync()) {
+                sync();
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException(e.getMessage());
+        }
+    }
+
+    private boolean shouldSync() {
+        switch (fsyncPolicy) {
+            case PER_OPERATION:
+                return true;
+            case PER_BATCH:
+                return unsyncedRecords >= BATCH_SIZE;
+            case PERIODIC:
+                return System.nanoTime() - lastSync >= SYNC_PERIOD_NANOS;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,85 @@
+package org.kamenkov.java_kanban.managers;
+
+import org.kamenkov.java_kanban.task.Task;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Persisted state of a {@link FileBackedTasksManager}: all tasks ordered by ID and IDs of viewed tasks.
+ */
+class TasksSnapshot {
+
+    private final Map<Long, Task> tasks = new TreeMap<>();
+    /* Insertion-ordered, so a view moves the ID to the end in O(1) */
+    private final Set<Long> history = new LinkedHashSet<>();
+    private long reservedId;
+
+    /**
+     * Returns all tasks ordered by their IDs.
+     *
+     * @return {@link Collection} of {@link Task}.
+     */
+    Collection<Task> getTasks() {
+        return tasks.values();
+    }
+
+    /**
+     * Returns IDs of viewed tasks in order of viewing.
+     *
+     * @return {@link Collection} of IDs.
+     */
+    Collection<Long> getHistory() {
+        return history;
+    }
+
+    /**
+     * Puts the given {@link Task} replacing the task with the same ID.
+     *
+     * @param task {@link Task} that should be saved.
+     */
+    void put(Task task) {
+        tasks.put(task.getId(), task);
+    }
+
+    /**
+     * Removes the {@link Task} with the given ID and its views.
+     *
+     * @param id unique id of the {@link Task}.
+     */
+    void remove(Long id) {
+        tasks.remove(id);
+        history.remove(id);
+    }
+
+    /**
+     * Moves the given ID to the end of the history.
+     *
+     * @param id unique id of the viewed {@link Task}.
+     */
+    void view(Long id) {
+        history.remove(id);
+        history.add(id);
+    }
+
+    /**
+     * Returns the highest ID reserved by the manager, IDs up to it may have been issued after the snapshot.
+     *
+     * @return ID or zero if nothing has been reserved.
+     */
+    long getReservedId() {
+        return reservedId;
+    }
+
+    /**
+     * Sets the highest ID reserved by the manager.
+     *
+     * @param reservedId ID from the reservation file.
+     */
+    void setReservedId(long reservedId) {
+        this.reservedId = reservedId;
+    }
+}
@@ -0,0 +1,140 @@
+package org.kamenkov.java_kanban.managers;
+
+import org.kamenkov.java_kanban.task.Epic;
+import org.kamenkov.java_kanban.task.Task;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * Index of the time slots occupied by scheduled {@link Task}s.
+ * Slots are kept sorted by their start (in epoch minutes). Indexed slots never overlap, since every slot is
+ * checked before it is added, so their ends are sorted as well: an overlap check looks at the nearest slot that
+ * starts before the checked interval and at the first slots that start within it, whatever the durations are.
+ * Empty slots do not cover any time and are kept apart, so they are never looked through.
+ * {@link Epic}s and tasks without start date are not indexed.
+ */
+class TimeSlotIndex {
+
+    private final NavigableSet<Slot> slots = new TreeSet<>();
+    private final NavigableSet<Slot> emptySlots = new TreeSet<>();
+    private final Map<Long, Slot> slotsById = new HashMap<>();
+
+    /**
+     * Puts the current time slot of the given {@link Task} to the index replacing the previous one.
+     *
+     * @param task {@link Task} whose time slot should be indexed.
+     */
+    void add(Task task) {
+        if (task == null || task.getId() == null) {
+            return;
+        }
+        remove(task.getId());
+        if (task instanceof Epic || !task.hasStartDate()) {
+            return;
+        }
+        final long start = toEpochMinutes(task.getStartEpochSecond());
+        final Slot slot = new Slot(start, start + task.getDurationInMinutes(), task.getId(), task);
+        setOf(slot).add(slot);
+        slotsById.put(slot.id, slot);
+    }
+
+    /**
+     * Removes the time slot of the {@link Task} with the given ID.
+     *
+     * @param id unique id of the {@link Task}.
+     */
+    void remove(Long id) {
+        final Slot slot = slotsById.remove(id);
+        if (slot != null) {
+            setOf(slot).remove(slot);
+        }
+    }
+
+    /**
+     * Removes all time slots from the index.
+     */
+    void clear() {
+        slots.clear();
+        emptySlots.clear();
+        slotsById.clear();
+    }
+
+    /**
+     * Looks for the earliest indexed slot that overlaps the time slot of the given {@link Task}.
+     * The slot of the task itself is ignored, so the check can be used for updates.
+     *
+     * @param task {@link Task} which dates should be checked.
+     * @return {@link Optional} with the overlapping {@link Task} or an empty {@link Optional}.
+     */
+    Optional<Task> findFirstOverlap(Task task) {
+        if (!task.hasStartDate()) {
+            return Optional.empty();
+        }
+        final long start = toEpochMinutes(task.getStartEpochSecond());
+        final long end = start + task.getDurationInMinutes();
+        final long id = task.getId() == null ? Long.MIN_VALUE : task.getId();
+        // the only slot that can cover the start: slots before it end earlier
+        final Slot before = slots.lower(new Slot(start, start, Long.MIN_VALUE, null));
+        if (before != null && before.end > start && before.id != id) {
+            return Optional.of(before.task);
+        }
+        if (end <= start) {
+            return Optional.empty();
+        }
+        final Slot within = first(slots.subSet(new Slot(start, start, Long.MIN_VALUE, null), true,
+                new Slot(end, end, Long.MIN_VALUE, null), false), id);
+        final Slot point = first(emptySlots.subSet(new Slot(start, start, Long.MAX_VALUE, null), true,
+                new Slot(end, end, Long.MIN_VALUE, null), false), id);
+        if (within == null || (point != null && point.compareTo(within) < 0)) {
+            return Optional.ofNullable(point).map(slot -> slot.task);
+        }
+        return Optional.of(within.task);
+    }
+
+    private NavigableSet<Slot> setOf(Slot slot) {
+        return slot.end > slot.start ? slots : emptySlots;
+    }
+
+    /**
+     * Returns the first slot of another task, only the slot of the task itself can be skipped.
+     */
+    private static Slot first(NavigableSet<Slot> slots, long id) {
+        for (Slot slot : slots) {
+            if (slot.id != id) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    private static long toEpochMinutes(long epochSecond) {
+        return Math.floorDiv(epochSecond, 60);
+    }
+
+    /**
+     * Time slot of a single {@link Task}: [start, end) in epoch minutes.
+     */
+    private static class Slot implements Comparable<Slot> {
+        final long start;
+        final long end;
+        final long id;
+        final Task task;
+
+        Slot(long start, long end, long id, Task task) {
+            this.start = start;
+            this.end = end;
+            this.id = id;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Slot o) {
+            final int byStart = Long.compare(start, o.start);
+            return byStart != 0 ? byStart : Long.compare(id, o.id);
+        }
+    }
+}
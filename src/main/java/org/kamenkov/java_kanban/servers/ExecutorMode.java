@@ -0,0 +1,70 @@
+package org.kamenkov.java_kanban.servers;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link Enum} that contains modes of serving requests by {@link HttpTaskServer} and {@link KVServer}.
+ */
+public enum ExecutorMode {
+    /**
+     * Requests are served on the single dispatcher thread of the server.
+     */
+    DISPATCHER,
+    /**
+     * Requests are served by a pool with a fixed amount of threads.
+     */
+    FIXED,
+    /**
+     * Requests are served by a work-stealing {@link java.util.concurrent.ForkJoinPool}.
+     */
+    WORK_STEALING,
+    /**
+     * Every request is served by a new virtual thread. Requires JDK 21 or newer.
+     */
+    VIRTUAL;
+
+    private static final String VIRTUAL_THREAD_FACTORY_METHOD = "newVirtualThreadPerTaskExecutor";
+
+    /**
+     * Checks whether the mode can be used on the current JDK.
+     *
+     * @return false for {@link #VIRTUAL} on JDK without virtual threads.
+     */
+    public boolean isSupported() {
+        if (this != VIRTUAL) {
+            return true;
+        }
+        try {
+            Executors.class.getMethod(VIRTUAL_THREAD_FACTORY_METHOD);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates executor for the mode.
+     *
+     * @param threads amount of threads for {@link #FIXED} and parallelism for {@link #WORK_STEALING}.
+     * @return new {@link ExecutorService} or null for {@link #DISPATCHER}.
+     * @throws UnsupportedOperationException if the mode is not supported by the current JDK.
+     */
+    ExecutorService createExecutor(int threads) {
+        switch (this) {
+            case FIXED:
+                return Executors.newFixedThreadPool(threads);
+            case WORK_STEALING:
+                return Executors.newWorkStealingPool(threads);
+            case VIRTUAL:
+                try {
+                    return (ExecutorService) Executors.class.getMethod(VIRTUAL_THREAD_FACTORY_METHOD).invoke(null);
+                } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                    throw new UnsupportedOperationException("Virtual threads are not supported by this JDK", e);
+                }
+            default:
+                return null;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.google.gson.Gson;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
+import org.kamenkov.java_kanban.managers.PartitionedHistoryManager;
 import org.kamenkov.java_kanban.managers.TaskManager;
 import org.kamenkov.java_kanban.task.Type;
 import org.kamenkov.java_kanban.utils.Utils;
@@ -14,10 +15,13 @@ import java.net.InetSocketAddress;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 
 public class HttpTaskServer {
     private static final String CONTENT_TYPE = "Content-Type";
+    private static final String USER_HEADER = "X-User";
+    private static final String AUTHORIZATION_HEADER = "Authorization";
     private static final List<String> JSON = Collections.singletonList("application/json");
     private static final String TASKS_ENDPOINT = "/tasks";
     private static final String TASK_ENDPOINT = "/tasks/task";
@@ -25,10 +29,34 @@ public class HttpTaskServer {
     private static final String SUBTASK_ENDPOINT = "/tasks/subtask";
     private static final String SUBTASK_EPIC_ENDPOINT = "/tasks/subtask/epic";
     private static final String HISTORY_ENDPOINT = "/tasks/history";
+    private static final int PORT = 8080;
     private final Gson gson;
     private final HttpServer server;
+    private final ExecutorService executor;
 
     public HttpTaskServer(TaskManager taskManager) throws IOException {
+        this(taskManager, ExecutorMode.DISPATCHER, 1, 0);
+    }
+
+    /**
+     * Creates server that serves requests in the given {@link ExecutorMode}.
+     * Modes other than {@link ExecutorMode#DISPATCHER} serve requests concurrently, so the given
+     * {@link TaskManager} should be thread-safe, e.g. {@link org.kamenkov.java_kanban.managers.ConcurrentTaskManager}.
+     *
+     * @param taskManager {@link TaskManager} that stores tasks.
+     * @param mode        {@link ExecutorMode} of serving requests.
+     * @param threads     amount of threads for {@link ExecutorMode#FIXED} and {@link ExecutorMode#WORK_STEALING}.
+     * @param backlog     maximum amount of queued incoming connections, system default if not positive.
+     * @throws IOException if the server cannot be bound to the port.
+     * @throws UnsupportedOperationException if the mode is not supported by the current JDK.
+     */
+    public HttpTaskServer(TaskManager taskManager, ExecutorMode mode, int threads, int backlog) throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Amount of threads should be positive");
+        }
+        if (!mode.isSupported()) {
+            throw new UnsupportedOperationException(mode + " mode is not supported by the current JDK");
+        }
         gson = new Gson();
         Map<Method, Function<HttpExchange, Response>> tasksMethods = Map.ofEntries(
                 Map.entry(Method.GET, exchange -> {
@@ -95,7 +123,10 @@ public class HttpTaskServer {
         Map<Method, Function<HttpExchange, Response>> historyMethods = Map.ofEntries(
                 Map.entry(Method.GET, exchange -> new Response(200, gson.toJson(taskManager.getHistory())))
         );
-        server = HttpServer.create(new InetSocketAddress(8080), 0);
+        server = HttpServer.create(new InetSocketAddress(PORT), backlog);
+        // the executor is created once the port is bound, so nothing is left running if the bind fails
+        executor = mode.createExecutor(threads);
+        server.setExecutor(executor);
         server.createContext(TASKS_ENDPOINT, new DefaultHandler(tasksMethods));
         server.createContext(TASK_ENDPOINT, new DefaultHandler(taskMethods));
         server.createContext(EPIC_ENDPOINT, new DefaultHandler(epicMethods));
@@ -110,6 +141,9 @@ public class HttpTaskServer {
 
     public void stop() {
         server.stop(5);
+        if (executor != null) {
+            executor.shutdown();
+        }
     }
 
     private static class DefaultHandler implements HttpHandler {
@@ -120,9 +154,17 @@ public class HttpTaskServer {
             this.operations = operations;
         }
 
+        /**
+         * Serves the request on behalf of the user from the {@value #USER_HEADER} header or, if there is none,
+         * of the {@value #AUTHORIZATION_HEADER} token, so {@link PartitionedHistoryManager} keeps their history
+         * apart.
+         */
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             try {
+                final String user = exchange.getRequestHeaders().getFirst(USER_HEADER);
+                PartitionedHistoryManager.setCurrentPartition(
+                        user != null ? user : exchange.getRequestHeaders().getFirst(AUTHORIZATION_HEADER));
                 exchange.getResponseHeaders().put(CONTENT_TYPE, JSON);
                 Method method = Method.valueOf(exchange.getRequestMethod());
                 if (operations.containsKey(method)) {
@@ -131,6 +173,7 @@ public class HttpTaskServer {
                     exchange.sendResponseHeaders(405, -1);
                 }
             } finally {
+                PartitionedHistoryManager.clearCurrentPartition();
                 exchange.close();
             }
         }
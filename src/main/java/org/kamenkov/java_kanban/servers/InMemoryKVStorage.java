@@ -0,0 +1,86 @@
+package org.kamenkov.java_kanban.servers;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * {@link KVStorage} that keeps values in memory only, they are lost when the server stops.
+ * Values are kept in a {@link ConcurrentHashMap}, so single values are read without locks. Writes take the write
+ * lock and reads of several values take the read lock, so they never see a half of {@link #putAll(Map)}.
+ */
+public class InMemoryKVStorage implements KVStorage {
+
+    private final Map<String, KVEntry> data = new ConcurrentHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Override
+    public KVEntry get(String key) {
+        return data.get(key);
+    }
+
+    @Override
+    public Map<String, KVEntry> getAll(Collection<String> keys) {
+        final Map<String, KVEntry> entries = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (String key : keys) {
+                final KVEntry entry = data.get(key);
+                if (entry != null) {
+                    entries.put(key, entry);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return entries;
+    }
+
+    @Override
+    public List<String> keys(String prefix) {
+        return data.keySet().stream()
+                .filter(key -> key.startsWith(prefix))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Map<String, Long> putAll(Map<String, byte[]> values, Collection<String> removedKeys,
+                                    Map<String, Long> expectedVersions) {
+        final Map<String, Long> versions = new HashMap<>();
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<String, Long> expected : expectedVersions.entrySet()) {
+                if (getVersion(expected.getKey()) != expected.getValue()) {
+                    return null;
+                }
+            }
+            for (Map.Entry<String, byte[]> value : values.entrySet()) {
+                final long version = getVersion(value.getKey()) + 1;
+                data.put(value.getKey(), new KVEntry(value.getValue(), version));
+                versions.put(value.getKey(), version);
+            }
+            for (String key : removedKeys) {
+                data.remove(key);
+                versions.put(key, KVEntry.NO_VERSION);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return versions;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private long getVersion(String key) {
+        final KVEntry entry = data.get(key);
+        return entry == null ? KVEntry.NO_VERSION : entry.getVersion();
+    }
+}
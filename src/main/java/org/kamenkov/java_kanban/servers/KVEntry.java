@@ -0,0 +1,27 @@
+package org.kamenkov.java_kanban.servers;
+
+/**
+ * Value saved in a {@link KVStorage} with its version. The version of a key starts with 1 and grows by one on
+ * every write, so a client can save a value only if nobody has changed it since it was read.
+ */
+public final class KVEntry {
+
+    /** Version of a key without value. */
+    public static final long NO_VERSION = 0L;
+
+    private final byte[] value;
+    private final long version;
+
+    public KVEntry(byte[] value, long version) {
+        this.value = value;
+        this.version = version;
+    }
+
+    public byte[] getValue() {
+        return value;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -1,13 +1,27 @@
 package org.kamenkov.java_kanban.servers;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -18,39 +32,100 @@ public class KVServer {
 	public static final String REGISTER_URL = "/register";
 	public static final String SAVE_URL = "/save";
 	public static final String LOAD_URL = "/load";
+	public static final String BATCH_SAVE_URL = "/batch/save";
+	public static final String BATCH_LOAD_URL = "/batch/load";
+	public static final String KEYS_URL = "/keys";
 	public static final int PORT = 8078;
+	public static final int DEFAULT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+	private static final Logger LOG = Logger.getLogger(KVServer.class.getName());
 	private final String apiToken;
 	private final HttpServer server;
-	private final Map<String, String> data = new HashMap<>();
+	private final ExecutorService executor;
+	private static final Gson GSON = new Gson();
+	private static final Type STRING_MAP = new TypeToken<Map<String, String>>() {}.getType();
+	private static final Type ENTRY_MAP = new TypeToken<Map<String, BatchEntry>>() {}.getType();
+	private static final String ETAG = "ETag";
+	private static final String IF_MATCH = "If-Match";
+	private static final int MAX_PREALLOCATED_BODY = 1 << 23;
+	private final KVStorage data;
+
+	static {
+		// headers and body of a response are written separately, without TCP_NODELAY a reused connection waits
+		// for the delayed ACK of the client on every request
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
 
 	public KVServer() throws IOException {
+		this(new InMemoryKVStorage());
+	}
+
+	/**
+	 * Creates server that keeps values in the given storage, e.g. {@link LogKVStorage} to keep them after
+	 * a restart. The storage is closed when the server stops.
+	 *
+	 * @param storage {@link KVStorage} of the values.
+	 */
+	public KVServer(KVStorage storage) throws IOException {
+		this(storage, ExecutorMode.FIXED, DEFAULT_THREADS);
+	}
+
+	/**
+	 * Creates server that serves requests in the given {@link ExecutorMode}. Modes other than
+	 * {@link ExecutorMode#DISPATCHER} serve requests concurrently, so the storage should be thread-safe.
+	 * Requests are logged at {@link Level#FINE}, so they cost nothing unless the level is enabled.
+	 *
+	 * @param storage {@link KVStorage} of the values.
+	 * @param mode    {@link ExecutorMode} of serving requests.
+	 * @param threads amount of threads for {@link ExecutorMode#FIXED} and {@link ExecutorMode#WORK_STEALING}.
+	 * @throws IOException if the server cannot be bound to the port.
+	 * @throws UnsupportedOperationException if the mode is not supported by the current JDK.
+	 */
+	public KVServer(KVStorage storage, ExecutorMode mode, int threads) throws IOException {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Amount of threads should be positive");
+		}
+		if (!mode.isSupported()) {
+			throw new UnsupportedOperationException(mode + " mode is not supported by the current JDK");
+		}
+		data = storage;
 		apiToken = generateApiToken();
 		server = HttpServer.create(new InetSocketAddress("localhost", PORT), 0);
+		// the executor is created once the port is bound, so nothing is left running if the bind fails
+		executor = mode.createExecutor(threads);
+		server.setExecutor(executor);
 
 		server.createContext(REGISTER_URL, this::register);
 		server.createContext(SAVE_URL, this::save);
 		server.createContext(LOAD_URL, this::load);
+		server.createContext(BATCH_SAVE_URL, this::batchSave);
+		server.createContext(BATCH_LOAD_URL, this::batchLoad);
+		server.createContext(KEYS_URL, this::keys);
 	}
 
+	/**
+	 * Returns the value with its version in the {@value #ETAG} header.
+	 */
 	private void load(HttpExchange h) throws IOException {
 		try {
 			if (hasNotAuth(h)) {
-				h.sendResponseHeaders(403, -1);
+				sendEmpty(h, 403);
 				return;
 			}
 			if ("GET".equals(h.getRequestMethod())) {
 				String key = h.getRequestURI().getPath().substring("/save/".length());
 				if (key.isEmpty()) {
-					h.sendResponseHeaders(400, -1);
+					sendEmpty(h, 400);
 					return;
 				}
-				if (data.containsKey(key)) {
-					h.sendResponseHeaders(200, 0);
-					try (OutputStream os = h.getResponseBody()) {
-						os.write(data.get(key).getBytes());
-					}
-				} else {
-					h.sendResponseHeaders(404, -1);
+				boolean found = data.transferTo(key, (length, version) -> {
+					h.getResponseHeaders().set(ETAG, toEntityTag(version));
+					h.sendResponseHeaders(200, length > 0 ? length : -1);
+					return h.getResponseBody();
+				});
+				if (!found) {
+					sendEmpty(h, 404);
 				}
 			}
 		} finally {
@@ -58,47 +133,219 @@ public class KVServer {
 		}
 	}
 
+	/**
+	 * Saves the value and returns its new version in the {@value #ETAG} header. With the {@value #IF_MATCH} header
+	 * the value is saved only if the key still has the given version, {@code "0"} if it should have no value;
+	 * otherwise 412 is returned with the current version.
+	 */
 	private void save(HttpExchange h) throws IOException {
 		try {
-			System.out.println("\n/save");
 			if (hasNotAuth(h)) {
-				System.out.println("Запрос неавторизован, нужен параметр в query API_TOKEN со значением апи-ключа");
-				h.sendResponseHeaders(403, 0);
+				LOG.fine("Запрос неавторизован, нужен параметр в query API_TOKEN со значением апи-ключа");
+				sendEmpty(h, 403);
 				return;
 			}
 			if ("POST".equals(h.getRequestMethod())) {
 				String key = h.getRequestURI().getPath().substring("/save/".length());
 				if (key.isEmpty()) {
-					System.out.println("Key для сохранения пустой. key указывается в пути: /save/{key}");
-					h.sendResponseHeaders(400, 0);
+					LOG.fine("Key для сохранения пустой. key указывается в пути: /save/{key}");
+					sendEmpty(h, 400);
+					return;
+				}
+				Long expectedVersion;
+				try {
+					expectedVersion = parseVersion(h.getRequestHeaders().getFirst(IF_MATCH));
+				} catch (NumberFormatException e) {
+					LOG.fine("Заголовок If-Match должен содержать версию значения из ETag");
+					sendEmpty(h, 400);
 					return;
 				}
-				String value = readText(h);
-				if (value.isEmpty()) {
-					System.out.println("Value для сохранения пустой. value указывается в теле запроса");
-					h.sendResponseHeaders(400, 0);
+				byte[] value = readBytes(h);
+				if (value.length == 0) {
+					LOG.fine("Value для сохранения пустой. value указывается в теле запроса");
+					sendEmpty(h, 400);
 					return;
 				}
-				data.put(key, value);
-				System.out.println("Значение для ключа " + key + " успешно обновлено!");
-				h.sendResponseHeaders(200, 0);
+				Map<String, Long> versions;
+				try {
+					versions = data.putAll(Map.of(key, value),
+							expectedVersion != null ? Map.of(key, expectedVersion) : Map.of());
+				} catch (UncheckedIOException e) {
+					LOG.log(Level.SEVERE, "Не удалось сохранить значение для ключа " + key, e);
+					sendEmpty(h, 500);
+					return;
+				}
+				if (versions == null) {
+					LOG.fine(() -> "Значение для ключа " + key + " изменилось, нужна версия " + expectedVersion);
+					h.getResponseHeaders().set(ETAG, toEntityTag(getVersions(List.of(key)).get(key)));
+					sendEmpty(h, 412);
+					return;
+				}
+				LOG.fine(() -> "Значение для ключа " + key + " успешно обновлено!");
+				h.getResponseHeaders().set(ETAG, toEntityTag(versions.get(key)));
+				sendEmpty(h, 200);
+			} else {
+				LOG.fine(() -> "/save ждёт POST-запрос, а получил: " + h.getRequestMethod());
+				sendEmpty(h, 405);
+			}
+		} finally {
+			h.close();
+		}
+	}
+
+	/**
+	 * Saves all values of the JSON object from the request body under their keys: {@code {"key": "value"}}.
+	 * With the {@code versions=true} query parameter every value comes with the version its key should have:
+	 * {@code {"key": {"value": "value", "version": 1}}}, null version saves the value unconditionally, null value
+	 * removes the key. Then new versions are returned as {@code {"key": 2}}, zero for the removed keys, or current
+	 * versions with 412 if a version differs and nothing is saved.
+	 */
+	private void batchSave(HttpExchange h) throws IOException {
+		try {
+			if (hasNotAuth(h)) {
+				LOG.fine("Запрос неавторизован, нужен параметр в query API_TOKEN со значением апи-ключа");
+				sendEmpty(h, 403);
+				return;
+			}
+			if (!"POST".equals(h.getRequestMethod())) {
+				LOG.fine(() -> BATCH_SAVE_URL + " ждёт POST-запрос, а получил: " + h.getRequestMethod());
+				sendEmpty(h, 405);
+				return;
+			}
+			boolean versioned = isVersioned(h);
+			Map<String, String> values = new LinkedHashMap<>();
+			List<String> removedKeys = new ArrayList<>();
+			Map<String, Long> expectedVersions = new HashMap<>();
+			try {
+				if (versioned) {
+					Map<String, BatchEntry> entries = GSON.fromJson(readText(h), ENTRY_MAP);
+					if (entries == null) {
+						values = null;
+					} else {
+						for (Map.Entry<String, BatchEntry> entry : entries.entrySet()) {
+							BatchEntry batchEntry = entry.getValue();
+							if (batchEntry != null && batchEntry.value == null) {
+								removedKeys.add(entry.getKey());
+							} else {
+								values.put(entry.getKey(), batchEntry != null ? batchEntry.value : null);
+							}
+							if (batchEntry != null && batchEntry.version != null) {
+								expectedVersions.put(entry.getKey(), batchEntry.version);
+							}
+						}
+					}
+				} else {
+					values = GSON.fromJson(readText(h), STRING_MAP);
+				}
+			} catch (JsonParseException e) {
+				values = null;
+			}
+			if (values == null || values.isEmpty() && removedKeys.isEmpty() || values.containsKey("")
+					|| removedKeys.contains("") || values.containsValue(null) || values.containsValue("")) {
+				LOG.fine("Тело запроса должно быть JSON-объектом с непустыми ключами и значениями");
+				sendEmpty(h, 400);
+				return;
+			}
+			Map<String, byte[]> bytes = new LinkedHashMap<>();
+			values.forEach((key, value) -> bytes.put(key, value.getBytes(UTF_8)));
+			Map<String, Long> versions;
+			try {
+				versions = data.putAll(bytes, removedKeys, expectedVersions);
+			} catch (UncheckedIOException e) {
+				LOG.log(Level.SEVERE, "Не удалось сохранить значения для " + values.size() + " ключей", e);
+				sendEmpty(h, 500);
+				return;
+			}
+			if (versions == null) {
+				LOG.fine("Значения изменились, ни одно значение не сохранено");
+				List<String> keys = new ArrayList<>(values.keySet());
+				keys.addAll(removedKeys);
+				sendText(h, 412, GSON.toJson(getVersions(keys)));
+				return;
+			}
+			final int size = values.size() + removedKeys.size();
+			LOG.fine(() -> "Значения для " + size + " ключей успешно обновлены!");
+			if (versioned) {
+				sendText(h, 200, GSON.toJson(versions));
 			} else {
-				System.out.println("/save ждёт POST-запрос, а получил: " + h.getRequestMethod());
-				h.sendResponseHeaders(405, 0);
+				sendEmpty(h, 200);
 			}
 		} finally {
 			h.close();
 		}
 	}
 
+	/**
+	 * Returns values of the keys from the JSON array in the request body as a JSON object, unknown keys are
+	 * left out. Values saved by a single batch are returned all together or not at all. With the
+	 * {@code versions=true} query parameter every value comes with its version:
+	 * {@code {"key": {"value": "value", "version": 1}}}.
+	 */
+	private void batchLoad(HttpExchange h) throws IOException {
+		try {
+			if (hasNotAuth(h)) {
+				sendEmpty(h, 403);
+				return;
+			}
+			if (!"POST".equals(h.getRequestMethod())) {
+				sendEmpty(h, 405);
+				return;
+			}
+			String[] keys;
+			try {
+				keys = GSON.fromJson(readText(h), String[].class);
+			} catch (JsonParseException e) {
+				keys = null;
+			}
+			if (keys == null) {
+				sendEmpty(h, 400);
+				return;
+			}
+			Map<String, KVEntry> found = data.getAll(Arrays.asList(keys));
+			boolean versioned = isVersioned(h);
+			Map<String, Object> values = new LinkedHashMap<>();
+			for (String key : keys) {
+				KVEntry entry = found.get(key);
+				if (entry != null) {
+					String value = new String(entry.getValue(), UTF_8);
+					values.put(key, versioned ? new BatchEntry(value, entry.getVersion()) : value);
+				}
+			}
+			sendText(h, GSON.toJson(values));
+		} finally {
+			h.close();
+		}
+	}
+
+	/**
+	 * Returns the keys that start with the {@code prefix} query parameter as a JSON array in ascending order,
+	 * all keys if there is no prefix.
+	 */
+	private void keys(HttpExchange h) throws IOException {
+		try {
+			if (hasNotAuth(h)) {
+				sendEmpty(h, 403);
+				return;
+			}
+			if (!"GET".equals(h.getRequestMethod())) {
+				LOG.fine(() -> KEYS_URL + " ждёт GET-запрос, а получил: " + h.getRequestMethod());
+				sendEmpty(h, 405);
+				return;
+			}
+			String prefix = getQueryParameter(h, "prefix");
+			sendText(h, GSON.toJson(data.keys(prefix != null ? prefix : "")));
+		} finally {
+			h.close();
+		}
+	}
+
 	private void register(HttpExchange h) throws IOException {
 		try {
-			System.out.println("\n/register");
 			if ("GET".equals(h.getRequestMethod())) {
 				sendText(h, apiToken);
 			} else {
-				System.out.println("/register ждёт GET-запрос, а получил " + h.getRequestMethod());
-				h.sendResponseHeaders(405, 0);
+				LOG.fine(() -> "/register ждёт GET-запрос, а получил " + h.getRequestMethod());
+				sendEmpty(h, 405);
 			}
 		} finally {
 			h.close();
@@ -114,6 +361,10 @@ public class KVServer {
 
 	public void stop() {
 		server.stop(0);
+		if (executor != null) {
+			executor.shutdown();
+		}
+		data.close();
 	}
 	private String generateApiToken() {
 		return "" + System.currentTimeMillis();
@@ -124,14 +375,117 @@ public class KVServer {
 		return rawQuery == null || (!rawQuery.contains("API_TOKEN=" + apiToken) && !rawQuery.contains("API_TOKEN=DEBUG"));
 	}
 
+	protected boolean isVersioned(HttpExchange h) {
+		return "true".equals(getQueryParameter(h, "versions"));
+	}
+
+	/**
+	 * Returns the version from the entity tag of a {@value #IF_MATCH} header, quoted as in {@value #ETAG}.
+	 *
+	 * @return version or null if there is no header.
+	 * @throws NumberFormatException if the tag is not a version.
+	 */
+	protected Long parseVersion(String entityTag) {
+		if (entityTag == null) {
+			return null;
+		}
+		String version = entityTag.trim();
+		if (version.length() >= 2 && version.startsWith("\"") && version.endsWith("\"")) {
+			version = version.substring(1, version.length() - 1);
+		}
+		long parsed = Long.parseLong(version);
+		if (parsed < 0) {
+			throw new NumberFormatException("Version should not be negative: " + entityTag);
+		}
+		return parsed;
+	}
+
+	protected String toEntityTag(long version) {
+		return "\"" + version + "\"";
+	}
+
+	/**
+	 * Returns current versions of the keys, {@link KVEntry#NO_VERSION} for keys without value.
+	 */
+	private Map<String, Long> getVersions(Collection<String> keys) {
+		Map<String, KVEntry> entries = data.getAll(keys);
+		Map<String, Long> versions = new LinkedHashMap<>();
+		for (String key : keys) {
+			KVEntry entry = entries.get(key);
+			versions.put(key, entry != null ? entry.getVersion() : KVEntry.NO_VERSION);
+		}
+		return versions;
+	}
+
+	protected String getQueryParameter(HttpExchange h, String name) {
+		String rawQuery = h.getRequestURI().getRawQuery();
+		if (rawQuery == null) {
+			return null;
+		}
+		for (String parameter : rawQuery.split("&")) {
+			int separator = parameter.indexOf('=');
+			if (separator > 0 && parameter.substring(0, separator).equals(name)) {
+				return URLDecoder.decode(parameter.substring(separator + 1), UTF_8);
+			}
+		}
+		return null;
+	}
+
 	protected String readText(HttpExchange h) throws IOException {
-		return new String(h.getRequestBody().readAllBytes(), UTF_8);
+		return new String(readBytes(h), UTF_8);
+	}
+
+	/**
+	 * Reads the request body into an array of its Content-Length, so a large body is not copied while the array
+	 * grows. Only bodies up to {@link #MAX_PREALLOCATED_BODY} bytes are read this way, larger ones are read in
+	 * chunks, so a wrong Content-Length cannot make the server allocate memory for data that never comes.
+	 */
+	protected byte[] readBytes(HttpExchange h) throws IOException {
+		InputStream body = h.getRequestBody();
+		int length;
+		try {
+			length = Integer.parseInt(h.getRequestHeaders().getFirst("Content-Length"));
+		} catch (NumberFormatException e) {
+			length = -1;
+		}
+		if (length < 0 || length > MAX_PREALLOCATED_BODY) {
+			return body.readAllBytes();
+		}
+		byte[] bytes = new byte[length];
+		int read = body.readNBytes(bytes, 0, length);
+		return read == length ? bytes : Arrays.copyOf(bytes, read);
+	}
+
+	/**
+	 * Sends a response without body. The request body is drained first: the server closes the connection after
+	 * an empty response to a request whose body has not been read, so kept-alive clients would get a reset.
+	 */
+	protected void sendEmpty(HttpExchange h, int code) throws IOException {
+		h.getRequestBody().close();
+		h.sendResponseHeaders(code, -1);
 	}
 
 	protected void sendText(HttpExchange h, String text) throws IOException {
+		sendText(h, 200, text);
+	}
+
+	protected void sendText(HttpExchange h, int code, String text) throws IOException {
 		byte[] resp = text.getBytes(UTF_8);
 		h.getResponseHeaders().add("Content-Type", "application/json");
-		h.sendResponseHeaders(200, resp.length);
+		h.sendResponseHeaders(code, resp.length);
 		h.getResponseBody().write(resp);
 	}
+
+	/**
+	 * Value with its version in batch requests.
+	 */
+	private static class BatchEntry {
+		String value;
+		Long version;
+
+		BatchEntry(String value, Long version) {
+			this.value = value;
+			this.version = version;
+		}
+	}
 }
@@ -0,0 +1,122 @@
+package org.kamenkov.java_kanban.servers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage of the {@link KVServer} values. Values are raw bytes, the storage does not decode them.
+ * Every value has a version, see {@link KVEntry}.
+ */
+public interface KVStorage extends Closeable {
+
+    /**
+     * Returns the value saved under the key.
+     *
+     * @param key the key.
+     * @return {@link KVEntry} or null if nothing has been saved under the key.
+     */
+    KVEntry get(String key);
+
+    /**
+     * Returns values of the keys at a single moment: values saved by one {@link #putAll(Map)} are returned all
+     * together or not at all.
+     *
+     * @param keys the keys.
+     * @return values by their keys, keys without value are left out.
+     */
+    Map<String, KVEntry> getAll(Collection<String> keys);
+
+    /**
+     * Returns the keys that start with the prefix.
+     *
+     * @param prefix the prefix, empty for all keys.
+     * @return keys in ascending order.
+     */
+    List<String> keys(String prefix);
+
+    /**
+     * Writes the value saved under the key to the stream opened for its length, so the value can be sent with
+     * a known length. Storages that keep values on disk override it to send the value without loading it whole.
+     *
+     * @param key    the key.
+     * @param opener opens the stream for the value of the given length in bytes, the stream is closed afterwards.
+     * @return false if nothing has been saved under the key, the opener is not called then.
+     * @throws IOException if the value cannot be written to the stream.
+     */
+    default boolean transferTo(String key, StreamOpener opener) throws IOException {
+        final KVEntry entry = get(key);
+        if (entry == null) {
+            return false;
+        }
+        try (OutputStream out = opener.open(entry.getValue().length, entry.getVersion())) {
+            out.write(entry.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * Saves the value under the key replacing the previous one. The storage may keep the given array, so it
+     * should not be changed afterwards.
+     *
+     * @param key   the key.
+     * @param value the value.
+     * @return new version of the key.
+     */
+    default long put(String key, byte[] value) {
+        return putAll(Map.of(key, value)).get(key);
+    }
+
+    /**
+     * Saves all values under their keys atomically: readers see either all of them or none.
+     *
+     * @param values values by their keys.
+     * @return new versions by the keys.
+     */
+    default Map<String, Long> putAll(Map<String, byte[]> values) {
+        return putAll(values, Map.of());
+    }
+
+    /**
+     * Saves all values under their keys atomically if the keys still have the expected versions.
+     *
+     * @param values           values by their keys.
+     * @param expectedVersions versions the keys should have, {@link KVEntry#NO_VERSION} if the key should have
+     *                         no value; keys without expected version are saved unconditionally.
+     * @return new versions by the keys or null if a version differs, nothing is saved then.
+     */
+    default Map<String, Long> putAll(Map<String, byte[]> values, Map<String, Long> expectedVersions) {
+        return putAll(values, List.of(), expectedVersions);
+    }
+
+    /**
+     * Saves the values and removes the keys atomically if the keys still have the expected versions. Versions of
+     * a removed key start over if it is saved again.
+     *
+     * @param values           values by their keys.
+     * @param removedKeys      keys whose values should be removed, unknown keys are skipped.
+     * @param expectedVersions versions the keys should have, {@link KVEntry#NO_VERSION} if the key should have
+     *                         no value; keys without expected version are saved or removed unconditionally.
+     * @return new versions by the keys, {@link KVEntry#NO_VERSION} for the removed ones, or null if a version
+     * differs, nothing is changed then.
+     */
+    Map<String, Long> putAll(Map<String, byte[]> values, Collection<String> removedKeys,
+                             Map<String, Long> expectedVersions);
+
+    /**
+     * Releases resources of the storage, nothing is lost if the storage is durable.
+     */
+    @Override
+    void close();
+
+    /**
+     * Opens the stream for a value of the known length.
+     */
+    @FunctionalInterface
+    interface StreamOpener {
+        OutputStream open(long length, long version) throws IOException;
+    }
+}
@@ -0,0 +1,717 @@
+package org.kamenkov.java_kanban.servers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Durable {@link KVStorage} in the manner of Bitcask: values are appended to a log file, an in-memory index
+ * points to the latest value of every key.
+ * <p>
+ * The log starts with a header that identifies its format. Every write appends one record: CRC32 and length of
+ * the payload followed by the entries {@code keyLength, valueLength, version, key, value}. All values of
+ * {@link #putAll(Map)} go to a single record, so they are recovered together or not at all, and versions of the
+ * keys are kept in the log, so they continue after a restart. A removed key is written as a tombstone: an empty
+ * value with {@link KVEntry#NO_VERSION}; tombstones are garbage themselves and are dropped by compaction. On open the log is scanned to rebuild the index;
+ * a torn or damaged record at the end, left by a crash during the write, is cut off.
+ * <p>
+ * Values are read concurrently under a read lock, writes append under the write lock. Values are written to the
+ * log as they are given and {@link #transferTo(String, StreamOpener)} streams them from the file, so large values
+ * are not copied into intermediate arrays. Streaming happens without the lock: records are never changed once
+ * written, and a log replaced by compaction or closed stays open until the last stream from it ends.
+ * Replaced values stay in the log until compaction. When they take more than half of the log and more than the
+ * compaction threshold, the live values are copied to a new log by a background thread while the storage keeps
+ * serving requests, then records appended meanwhile are copied as well and the new log atomically replaces the
+ * old one.
+ */
+public class LogKVStorage implements KVStorage {
+
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 16L << 20;
+
+    /* "KVLOG" and the format version */
+    private static final long MAGIC = 0x4B564C4F47000002L;
+    private static final int FILE_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int ENTRY_HEADER_SIZE = 16;
+    private static final int COMPACTION_RECORD_SIZE = 1 << 20;
+    private static final String COMPACTION_SUFFIX = ".compact";
+    private static final byte[] TOMBSTONE = new byte[0];
+    private static final Logger LOG = Logger.getLogger(LogKVStorage.class.getName());
+
+    private final Path path;
+    private final boolean sync;
+    private final long compactionThreshold;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "kv-log-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Object compactionLock = new Object();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<String, Location> index = new HashMap<>();
+    private FileChannel channel;
+    private ChannelReferences references;
+    private long end;
+    private long liveBytes;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private volatile Future<?> compaction;
+    private volatile boolean closed;
+
+    /**
+     * Opens the log with the given path and forces every write to the storage device.
+     *
+     * @param path path of the log file, created if it does not exist.
+     * @throws UncheckedIOException if the log cannot be opened.
+     */
+    public LogKVStorage(Path path) {
+        this(path, true, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Opens the log with the given path.
+     *
+     * @param path                path of the log file, created if it does not exist.
+     * @param sync                whether every write should be forced to the storage device before it returns;
+     *                            without it the last writes may be lost by a crash of the system, not of the server.
+     * @param compactionThreshold minimal size of replaced values in bytes that starts compaction.
+     * @throws UncheckedIOException if the log cannot be opened or has another format.
+     */
+    public LogKVStorage(Path path, boolean sync, long compactionThreshold) {
+        this.path = path;
+        this.sync = sync;
+        this.compactionThreshold = compactionThreshold;
+        try {
+            Files.deleteIfExists(getCompactionPath());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (channel.size() < FILE_HEADER_SIZE) {
+                // new log or a crash while the header was written
+                channel.truncate(0);
+                writeHeader(channel);
+                channel.force(true);
+            } else if (readHeader(channel) != MAGIC) {
+                channel.close();
+                throw new IOException("Log has an unknown format and is left as it is: " + path);
+            }
+            references = new ChannelReferences(channel);
+            end = scan(channel, FILE_HEADER_SIZE, channel.size(), index);
+            if (end < channel.size()) {
+                LOG.warning("Log is damaged, records after " + end + " bytes are cut off: " + path);
+                channel.truncate(end);
+                channel.force(true);
+            }
+            liveBytes = sizeOf(index);
+        } catch (IOException e) {
+            compactor.shutdown();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public KVEntry get(String key) {
+        lock.readLock().lock();
+        try {
+            final Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            return new KVEntry(read(channel, location.position, location.length), location.version);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, KVEntry> getAll(Collection<String> keys) {
+        final Map<String, KVEntry> values = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (String key : keys) {
+                final Location location = index.get(key);
+                if (location != null) {
+                    values.put(key, new KVEntry(read(channel, location.position, location.length),
+                            location.version));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return values;
+    }
+
+    @Override
+    public List<String> keys(String prefix) {
+        final List<String> keys = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (String key : index.keySet()) {
+                if (key.startsWith(prefix)) {
+                    keys.add(key);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        keys.sort(null);
+        return keys;
+    }
+
+    /**
+     * Streams the value from the log file in small chunks. Only the location of the value is taken under the
+     * read lock, so writes do not wait for slow readers of large values.
+     */
+    @Override
+    public boolean transferTo(String key, StreamOpener opener) throws IOException {
+        final Location location;
+        final ChannelReferences source;
+        lock.readLock().lock();
+        try {
+            location = index.get(key);
+            if (location == null) {
+                return false;
+            }
+            source = references;
+            source.retain();
+        } finally {
+            lock.readLock().unlock();
+        }
+        try (OutputStream out = opener.open(location.length, location.version)) {
+            final WritableByteChannel target = Channels.newChannel(out);
+            for (long sent = 0; sent < location.length; ) {
+                sent += source.channel.transferTo(location.position + sent, location.length - sent, target);
+            }
+        } finally {
+            source.release();
+        }
+        return true;
+    }
+
+    /**
+     * Appends the values as a single record. The record wraps the given arrays instead of copying them, so it is
+     * cheap to build under the write lock, where the versions of the keys are known.
+     */
+    @Override
+    public Map<String, Long> putAll(Map<String, byte[]> values, Collection<String> removedKeys,
+                                    Map<String, Long> expectedVersions) {
+        final Map<String, Long> versions = new HashMap<>();
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<String, Long> expected : expectedVersions.entrySet()) {
+                if (getVersion(expected.getKey()) != expected.getValue()) {
+                    return null;
+                }
+            }
+            final RecordBuilder record = new RecordBuilder();
+            for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+                final long version = getVersion(entry.getKey()) + 1;
+                record.add(entry.getKey(), entry.getValue(), version);
+                versions.put(entry.getKey(), version);
+            }
+            for (String key : removedKeys) {
+                if (index.containsKey(key)) {
+                    record.add(key, TOMBSTONE, KVEntry.NO_VERSION);
+                }
+                versions.put(key, KVEntry.NO_VERSION);
+            }
+            if (record.isEmpty()) {
+                return versions;
+            }
+            try {
+                write(channel, end, record.build());
+                if (sync) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                // the torn record is overwritten by the next write
+                throw new UncheckedIOException(e);
+            }
+            liveBytes += apply(index, record.locations(end));
+            end += record.size();
+            startCompactionIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return versions;
+    }
+
+    /**
+     * Returns the size of the log.
+     *
+     * @return size in bytes.
+     */
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return end;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies the live values to a new log that replaces the current one.
+     *
+     * @throws UncheckedIOException if the new log cannot be written, the current one is kept then.
+     */
+    public void compact() {
+        synchronized (compactionLock) {
+            compactLog();
+        }
+        checkGarbage();
+    }
+
+    /**
+     * Waits until the background compaction, and the ones it has started, are finished.
+     */
+    void awaitCompaction() throws InterruptedException, ExecutionException {
+        Future<?> future;
+        while ((future = compaction) != null && !future.isDone()) {
+            future.get();
+        }
+    }
+
+    private void compactLog() {
+        final Map<String, Location> snapshot;
+        final long snapshotEnd;
+        final FileChannel source;
+        lock.readLock().lock();
+        try {
+            snapshot = new HashMap<>(index);
+            snapshotEnd = end;
+            source = channel;
+        } finally {
+            lock.readLock().unlock();
+        }
+        final Path compactionPath = getCompactionPath();
+        FileChannel target = null;
+        try {
+            target = FileChannel.open(compactionPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            final Map<String, Location> compacted = new HashMap<>();
+            writeHeader(target);
+            long position = FILE_HEADER_SIZE;
+            RecordBuilder record = new RecordBuilder();
+            for (Map.Entry<String, Location> entry : snapshot.entrySet()) {
+                final Location location = entry.getValue();
+                record.add(entry.getKey(), read(source, location.position, location.length), location.version);
+                if (record.size() >= COMPACTION_RECORD_SIZE) {
+                    position = append(target, position, record, compacted);
+                    record = new RecordBuilder();
+                }
+            }
+            if (!record.isEmpty()) {
+                position = append(target, position, record, compacted);
+            }
+            lock.writeLock().lock();
+            try {
+                if (closed || channel != source) {
+                    throw new IOException("Log has been closed during compaction: " + path);
+                }
+                // records appended during the copy
+                final long tailSize = end - snapshotEnd;
+                target.position(position);
+                for (long copied = 0; copied < tailSize; ) {
+                    copied += channel.transferTo(snapshotEnd + copied, tailSize - copied, target);
+                }
+                scan(target, position, position + tailSize, compacted);
+                target.force(true);
+                try {
+                    Files.move(compactionPath, path, StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(compactionPath, path, StandardCopyOption.REPLACE_EXISTING);
+                }
+                syncDirectory(path);
+                references.release();
+                channel = target;
+                references = new ChannelReferences(target);
+                target = null;
+                index = compacted;
+                end = position + tailSize;
+                liveBytes = sizeOf(compacted);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (target != null) {
+                try {
+                    target.close();
+                    Files.deleteIfExists(compactionPath);
+                } catch (IOException e) {
+                    LOG.log(Level.WARNING, "Compacted log is not removed: " + compactionPath, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            closed = true;
+            compactor.shutdown();
+            references.release();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compacts the log, then starts another compaction if writes made during this one have left enough garbage,
+     * since they did not start it themselves.
+     */
+    private void compactInBackground() {
+        boolean compacted = false;
+        try {
+            synchronized (compactionLock) {
+                compactLog();
+            }
+            compacted = true;
+        } catch (UncheckedIOException e) {
+            if (!closed) {
+                LOG.log(Level.SEVERE, "Log is not compacted: " + path, e);
+            }
+        } finally {
+            compacting.set(false);
+        }
+        if (compacted) {
+            checkGarbage();
+        }
+    }
+
+    private void checkGarbage() {
+        lock.readLock().lock();
+        try {
+            startCompactionIfNeeded();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Starts the background compaction if replaced values take more than half of the log and more than the
+     * threshold, unless it is running already. Should be called under the lock.
+     */
+    private void startCompactionIfNeeded() {
+        final long garbage = end - FILE_HEADER_SIZE - liveBytes;
+        if (!closed && garbage >= compactionThreshold && garbage > liveBytes
+                && compacting.compareAndSet(false, true)) {
+            compaction = compactor.submit(this::compactInBackground);
+        }
+    }
+
+    private Path getCompactionPath() {
+        return Path.of(path + COMPACTION_SUFFIX);
+    }
+
+    private long getVersion(String key) {
+        final Location location = index.get(key);
+        return location == null ? KVEntry.NO_VERSION : location.version;
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).putLong(MAGIC);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private static long readHeader(FileChannel channel) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        readFully(channel, 0, header);
+        return header.getLong(0);
+    }
+
+    /**
+     * Reads complete records between the given positions into the index.
+     *
+     * @return position after the last complete record.
+     */
+    private static long scan(FileChannel channel, long from, long to, Map<String, Location> index)
+            throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        long position = from;
+        while (to - position >= RECORD_HEADER_SIZE) {
+            header.clear();
+            readFully(channel, position, header);
+            header.flip();
+            final int crc = header.getInt();
+            final int length = header.getInt();
+            if (length < 0 || length > to - position - RECORD_HEADER_SIZE) {
+                break;
+            }
+            final ByteBuffer payload = ByteBuffer.wrap(read(channel, position + RECORD_HEADER_SIZE, length));
+            if (crc != checksum(payload.array(), 0, length)) {
+                break;
+            }
+            final Map<String, Location> entries = parse(payload, position + RECORD_HEADER_SIZE);
+            if (entries == null) {
+                break;
+            }
+            apply(index, entries);
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    /**
+     * Returns locations of the values in the payload of a record.
+     *
+     * @return locations by keys or null if the payload is malformed.
+     */
+    private static Map<String, Location> parse(ByteBuffer payload, long payloadPosition) {
+        final Map<String, Location> entries = new HashMap<>();
+        while (payload.hasRemaining()) {
+            if (payload.remaining() < ENTRY_HEADER_SIZE) {
+                return null;
+            }
+            final int keyLength = payload.getInt();
+            final int valueLength = payload.getInt();
+            final long version = payload.getLong();
+            if (keyLength < 0 || valueLength < 0 || (long) keyLength + valueLength > payload.remaining()) {
+                return null;
+            }
+            final String key = new String(payload.array(), payload.position(), keyLength, UTF_8);
+            payload.position(payload.position() + keyLength);
+            entries.put(key, new Location(payloadPosition + payload.position(), valueLength, keyLength, version));
+            payload.position(payload.position() + valueLength);
+        }
+        return entries;
+    }
+
+    /**
+     * Puts the locations of the values to the index and removes the keys of tombstones.
+     *
+     * @return change of the size of the live values.
+     */
+    private static long apply(Map<String, Location> index, Map<String, Location> entries) {
+        long change = 0;
+        for (Map.Entry<String, Location> entry : entries.entrySet()) {
+            final Location location = entry.getValue();
+            final Location previous = location.version == KVEntry.NO_VERSION
+                    ? index.remove(entry.getKey()) : index.put(entry.getKey(), location);
+            if (location.version != KVEntry.NO_VERSION) {
+                change += location.size();
+            }
+            if (previous != null) {
+                change -= previous.size();
+            }
+        }
+        return change;
+    }
+
+    private static long append(FileChannel channel, long position, RecordBuilder record,
+                               Map<String, Location> index) throws IOException {
+        write(channel, position, record.build());
+        index.putAll(record.locations(position));
+        return position + record.size();
+    }
+
+    /**
+     * Writes the buffers one after another with gathering writes.
+     */
+    private static void write(FileChannel channel, long position, ByteBuffer[] buffers) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        channel.position(position);
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+    }
+
+    private static byte[] read(FileChannel channel, long position, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(channel, position, buffer);
+        return buffer.array();
+    }
+
+    private static void readFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of the log");
+            }
+            position += read;
+        }
+    }
+
+    private static long sizeOf(Map<String, Location> index) {
+        long size = 0;
+        for (Location location : index.values()) {
+            size += location.size();
+        }
+        return size;
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Forces the rename to the storage device. Not every platform allows opening a directory, then the rename
+     * is left to the file system.
+     */
+    private static void syncDirectory(Path path) {
+        final Path directory = path.toAbsolutePath().getParent();
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories cannot be opened or forced on this platform
+        }
+    }
+
+    /**
+     * Counts users of a log channel: the storage itself and the running transfers. The channel is closed when
+     * the last of them releases it.
+     */
+    private static class ChannelReferences {
+        final FileChannel channel;
+        private int count = 1;
+
+        ChannelReferences(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        synchronized void retain() {
+            count++;
+        }
+
+        synchronized void release() throws IOException {
+            if (--count == 0) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Position, length and version of a value in the log.
+     */
+    private static class Location {
+        final long position;
+        final int length;
+        final int keyLength;
+        final long version;
+
+        Location(long position, int length, int keyLength, long version) {
+            this.position = position;
+            this.length = length;
+            this.keyLength = keyLength;
+            this.version = version;
+        }
+
+        /**
+         * Returns the size of the entry in the log.
+         */
+        long size() {
+            return ENTRY_HEADER_SIZE + keyLength + length;
+        }
+    }
+
+    /**
+     * Collects entries of a single record.
+     */
+    private static class RecordBuilder {
+        private final List<String> names = new ArrayList<>();
+        private final List<byte[]> keys = new ArrayList<>();
+        private final List<byte[]> values = new ArrayList<>();
+        private final List<Long> versions = new ArrayList<>();
+        private int size = RECORD_HEADER_SIZE;
+
+        void add(String name, byte[] value, long version) {
+            final byte[] key = name.getBytes(UTF_8);
+            names.add(name);
+            keys.add(key);
+            values.add(value);
+            versions.add(version);
+            size += ENTRY_HEADER_SIZE + key.length + value.length;
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return names.isEmpty();
+        }
+
+        /**
+         * Returns buffers of the record: its header, then the header and key of every entry followed by the value
+         * array itself.
+         */
+        ByteBuffer[] build() {
+            final ByteBuffer[] buffers = new ByteBuffer[1 + 2 * names.size()];
+            final CRC32 crc = new CRC32();
+            for (int i = 0; i < names.size(); i++) {
+                final byte[] key = keys.get(i);
+                final byte[] value = values.get(i);
+                final ByteBuffer entryHeader = ByteBuffer.allocate(ENTRY_HEADER_SIZE + key.length);
+                entryHeader.putInt(key.length).putInt(value.length).putLong(versions.get(i)).put(key).flip();
+                crc.update(entryHeader.array());
+                crc.update(value);
+                buffers[1 + 2 * i] = entryHeader;
+                buffers[2 + 2 * i] = ByteBuffer.wrap(value);
+            }
+            buffers[0] = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            buffers[0].putInt((int) crc.getValue()).putInt(size - RECORD_HEADER_SIZE).flip();
+            return buffers;
+        }
+
+        /**
+         * Returns locations of the values in the record written at the given position.
+         */
+        Map<String, Location> locations(long position) {
+            final Map<String, Location> locations = new HashMap<>();
+            long entryPosition = position + RECORD_HEADER_SIZE;
+            for (int i = 0; i < names.size(); i++) {
+                final int keyLength = keys.get(i).length;
+                final int valueLength = values.get(i).length;
+                locations.put(names.get(i), new Location(entryPosition + ENTRY_HEADER_SIZE + keyLength,
+                        valueLength, keyLength, versions.get(i)));
+                entryPosition += ENTRY_HEADER_SIZE + keyLength + valueLength;
+            }
+            return locations;
+        }
+    }
+}
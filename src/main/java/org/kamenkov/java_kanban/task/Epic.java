@@ -1,27 +1,35 @@
 package org.kamenkov.java_kanban.task;
 
+import com.google.gson.annotations.JsonAdapter;
 import org.kamenkov.java_kanban.Status;
+import org.kamenkov.java_kanban.utils.adapters.EpochSecondAdapter;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 public class Epic extends Task {
 
-    private final List<Subtask> subtasks;
-    private LocalDateTime endDate;
+    private final SubtaskList subtasks;
+    @JsonAdapter(EpochSecondAdapter.class)
+    private long endDate = NO_DATE;
+    private transient SubtaskAggregates aggregates;
 
     public Epic(String summary, String description) {
         super(summary, description);
-        subtasks = new ArrayList<>();
+        subtasks = new SubtaskList();
         setType(Type.EPIC);
         recalculateStatus();
     }
 
+    /* Used by Gson, so the fields without value in JSON keep their defaults */
+    private Epic() {
+        this(null, null);
+    }
+
     /**
-     * Returns all {@link Subtask}s form the exists {@link Epic}.
+     * Returns all {@link Subtask}s form the exists {@link Epic} in the order they were added.
      *
      * @return {@link List} of {@link Subtask}.
      */
@@ -30,19 +38,22 @@ public class Epic extends Task {
     }
 
     private void setEndDate(LocalDateTime endDate) {
-        this.endDate = endDate;
+        this.endDate = toEpochSecond(endDate);
     }
 
     /**
-     * Add {@link Subtask} to parent Epic.
+     * Add {@link Subtask} to parent Epic. A subtask with the ID already in the Epic replaces the stored one.
      *
      * @param subtask what subtask should be added.
      */
     public void addSubtask(Subtask subtask) {
-        if (subtask != null) {
+        if (subtask != null && subtask.getId() != null && subtasks.getById(subtask.getId()) != null) {
+            updateSubtask(subtask);
+        } else if (subtask != null) {
+            final SubtaskAggregates aggregates = getAggregates();
             subtasks.add(subtask);
-            recalculateStatus();
-            recalculateDates();
+            aggregates.add(subtask);
+            applyAggregates(aggregates);
         }
     }
 
@@ -53,16 +64,52 @@ public class Epic extends Task {
      */
     public void removeSubtask(Subtask subtask) {
         if (subtask != null) {
-            subtasks.remove(subtask);
-            recalculateStatus();
-            recalculateDates();
+            final SubtaskAggregates aggregates = getAggregates();
+            final Subtask removed = subtasks.removeSame(subtask);
+            if (removed == null) {
+                return;
+            }
+            aggregates.remove(removed);
+            applyAggregates(aggregates);
+        }
+    }
+
+    /**
+     * Remove all {@link Subtask}s from the Epic at once, dates of the Epic are kept.
+     */
+    public void removeAllSubtasks() {
+        subtasks.clear();
+        aggregates = null;
+        setStatus(Status.NEW);
+    }
+
+    /**
+     * Replaces the {@link Subtask} with the same ID by the given one, or takes into account changes of
+     * the given {@link Subtask} if it is already in the Epic. Unknown subtasks are added.
+     *
+     * @param subtask what subtask has been updated.
+     */
+    public void updateSubtask(Subtask subtask) {
+        if (subtask == null) {
+            return;
+        }
+        final SubtaskAggregates aggregates = getAggregates();
+        final Subtask previous = subtasks.replace(subtask);
+        if (previous == null) {
+            addSubtask(subtask);
+            return;
         }
+        aggregates.remove(previous);
+        aggregates.add(subtask);
+        applyAggregates(aggregates);
     }
 
     /**
      * Changes status of parent {@link Epic} based on its {@link Subtask}s.
+     * All subtasks are checked, so changes made to them outside the Epic are taken into account.
      */
     public void recalculateStatus() {
+        aggregates = null;
         if (subtasks.isEmpty()) {
             setStatus(Status.NEW);
             return;
@@ -77,29 +124,58 @@ public class Epic extends Task {
 
     /**
      * Changes dates of parent {@link Epic} based on its {@link Subtask}s.
+     * All subtasks are checked, so changes made to them outside the Epic are taken into account.
      */
     public void recalculateDates() {
+        aggregates = null;
         if (subtasks.isEmpty()) {
             return;
         }
-        long duration = subtasks.get(0).getDurationInMinutes();
-        LocalDateTime startDateToUpdate = subtasks.get(0).getStartDate();
-        LocalDateTime endDateToUpdate = subtasks.get(0).getEndDate();
-        for (int i = 1; i < subtasks.size(); i++) {
-            final Subtask subtask = subtasks.get(i);
+        long duration = 0;
+        long startDateToUpdate = NO_DATE;
+        long endDateToUpdate = NO_DATE;
+        for (Subtask subtask : subtasks) {
             duration += subtask.getDurationInMinutes();
-            final LocalDateTime subtaskStartDate = subtask.getStartDate();
-            if (subtaskStartDate != null && subtaskStartDate.isBefore(startDateToUpdate)) {
-                startDateToUpdate = subtaskStartDate;
+            if (!subtask.hasStartDate()) {
+                continue;
             }
-            final LocalDateTime subtaskEndDate = subtask.getEndDate();
-            if (subtaskEndDate != null && subtaskEndDate.isAfter(endDateToUpdate)) {
-                endDateToUpdate = subtaskEndDate;
+            final long subtaskStartDate = subtask.getStartEpochSecond();
+            if (startDateToUpdate == NO_DATE || subtaskStartDate < startDateToUpdate) {
+                startDateToUpdate = subtaskStartDate;
             }
+            endDateToUpdate = Math.max(endDateToUpdate, subtask.getEndEpochSecond());
         }
         setDurationInMinutes(duration);
-        setStartDate(startDateToUpdate);
-        setEndDate(endDateToUpdate);
+        setStartDate(toDate(startDateToUpdate));
+        endDate = endDateToUpdate;
+    }
+
+    /**
+     * Returns aggregates of the subtasks, they are rebuilt after deserialization or full recalculation.
+     *
+     * @return {@link SubtaskAggregates}.
+     */
+    private SubtaskAggregates getAggregates() {
+        if (aggregates == null) {
+            aggregates = new SubtaskAggregates();
+            subtasks.forEach(aggregates::add);
+        }
+        return aggregates;
+    }
+
+    /**
+     * Sets status and dates of the Epic from the aggregates, dates are kept when there are no subtasks.
+     *
+     * @param aggregates {@link SubtaskAggregates} of the subtasks.
+     */
+    private void applyAggregates(SubtaskAggregates aggregates) {
+        setStatus(aggregates.getStatus());
+        if (aggregates.isEmpty()) {
+            return;
+        }
+        setDurationInMinutes(aggregates.getDuration());
+        setStartDate(aggregates.getStartDate());
+        setEndDate(aggregates.getEndDate());
     }
 
     @Override
@@ -10,6 +10,11 @@ public class Subtask extends Task {
         setType(Type.SUBTASK);
     }
 
+    /* Used by Gson, so the fields without value in JSON keep their defaults */
+    private Subtask() {
+        this(null, null, null);
+    }
+
     /**
      * Returns the unique ID of the parent {@link Epic}.
      *
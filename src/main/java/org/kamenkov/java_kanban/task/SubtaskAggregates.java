@@ -0,0 +1,123 @@
+package org.kamenkov.java_kanban.task;
+
+import org.kamenkov.java_kanban.Status;
+
+import java.time.LocalDateTime;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Status counters, total duration and sorted multisets of start and end dates of the {@link Subtask}s
+ * of an {@link Epic}. Values are remembered per subtask object when it is added, so a subtask changed in place
+ * is removed with the values it was added with. Dates are kept in epoch seconds as {@link Task} stores them.
+ */
+class SubtaskAggregates {
+
+    private final Map<Subtask, Contribution> contributions = new IdentityHashMap<>();
+    private final int[] statusCounts = new int[Status.values().length];
+    private final NavigableMap<Long, Integer> startDates = new TreeMap<>();
+    private final NavigableMap<Long, Integer> endDates = new TreeMap<>();
+    private long duration;
+
+    /**
+     * Adds the current values of the {@link Subtask}.
+     *
+     * @param subtask {@link Subtask} that has been added to the Epic.
+     */
+    void add(Subtask subtask) {
+        final Contribution contribution = new Contribution(subtask);
+        final Contribution previous = contributions.put(subtask, contribution);
+        if (previous != null) {
+            withdraw(previous);
+        }
+        statusCounts[contribution.status.ordinal()]++;
+        duration += contribution.duration;
+        increment(startDates, contribution.startDate);
+        increment(endDates, contribution.endDate);
+    }
+
+    /**
+     * Removes the values the {@link Subtask} has been added with.
+     *
+     * @param subtask {@link Subtask} that has been removed from the Epic.
+     */
+    void remove(Subtask subtask) {
+        final Contribution contribution = contributions.remove(subtask);
+        if (contribution != null) {
+            withdraw(contribution);
+        }
+    }
+
+    boolean isEmpty() {
+        return contributions.isEmpty();
+    }
+
+    /**
+     * Returns status of the Epic: the status of all subtasks if they have the same one, {@link Status#IN_PROGRESS}
+     * otherwise and {@link Status#NEW} without subtasks.
+     *
+     * @return {@link Status}.
+     */
+    Status getStatus() {
+        final int size = contributions.size();
+        if (size == 0) {
+            return Status.NEW;
+        }
+        for (Status status : Status.values()) {
+            if (statusCounts[status.ordinal()] == size) {
+                return status;
+            }
+        }
+        return Status.IN_PROGRESS;
+    }
+
+    long getDuration() {
+        return duration;
+    }
+
+    LocalDateTime getStartDate() {
+        return startDates.isEmpty() ? null : Task.toDate(startDates.firstKey());
+    }
+
+    LocalDateTime getEndDate() {
+        return endDates.isEmpty() ? null : Task.toDate(endDates.lastKey());
+    }
+
+    private void withdraw(Contribution contribution) {
+        statusCounts[contribution.status.ordinal()]--;
+        duration -= contribution.duration;
+        decrement(startDates, contribution.startDate);
+        decrement(endDates, contribution.endDate);
+    }
+
+    private static void increment(NavigableMap<Long, Integer> dates, long date) {
+        if (date != Task.NO_DATE) {
+            dates.merge(date, 1, Integer::sum);
+        }
+    }
+
+    private static void decrement(NavigableMap<Long, Integer> dates, long date) {
+        if (date != Task.NO_DATE) {
+            dates.computeIfPresent(date, (key, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    /**
+     * Values of a {@link Subtask} at the moment it has been added.
+     */
+    private static class Contribution {
+        final Status status;
+        final long duration;
+        final long startDate;
+        final long endDate;
+
+        Contribution(Subtask subtask) {
+            status = subtask.getStatus();
+            duration = subtask.getDurationInMinutes();
+            startDate = subtask.getStartEpochSecond();
+            endDate = subtask.getEndEpochSecond();
+        }
+    }
+}
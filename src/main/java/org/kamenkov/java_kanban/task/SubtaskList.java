@@ -0,0 +1,404 @@
+package org.kamenkov.java_kanban.task;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Insertion-ordered {@link java.util.List} of {@link Subtask}s indexed by their IDs.
+ * <p>
+ * Subtasks are kept in arrays in insertion order, an open-addressing table of {@code long} IDs points to
+ * their positions. Lookup, replacement and removal by ID take O(1): a removed subtask leaves a hole that is
+ * skipped by iteration, the other subtasks stay where they are. Holes are squeezed out only by writes, once they
+ * take half of the arrays or the arrays are full, so the cost is amortized over the removals and reads never
+ * change the list. Access by list index has to skip the holes before it while there are any.
+ * Subtasks are unique by ID, adding a subtask with a known ID is rejected. Subtasks without ID are stored but
+ * can be found only by a scan.
+ */
+final class SubtaskList extends AbstractList<Subtask> {
+
+    private static final int MIN_CAPACITY = 8;
+    private static final long NO_ID = Long.MIN_VALUE;
+
+    private Subtask[] values = new Subtask[MIN_CAPACITY];
+    private long[] ids = new long[MIN_CAPACITY];
+    /* Positions in the arrays plus one, zero is an empty slot. */
+    private int[] table = new int[MIN_CAPACITY * 2];
+    /* Positions before end are either subtasks or holes. */
+    private int end;
+    private int size;
+
+    SubtaskList() {
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Subtask get(int index) {
+        Objects.checkIndex(index, size);
+        return values[positionAt(index)];
+    }
+
+    @Override
+    public Subtask set(int index, Subtask subtask) {
+        Objects.requireNonNull(subtask);
+        Objects.checkIndex(index, size);
+        final int position = positionAt(index);
+        final long id = idOf(subtask);
+        final int existing = position(id);
+        if (existing >= 0 && existing != position) {
+            throw new IllegalArgumentException("Subtask " + id + " is already in the list");
+        }
+        final Subtask previous = values[position];
+        if (ids[position] != NO_ID) {
+            unlink(ids[position]);
+        }
+        values[position] = subtask;
+        ids[position] = id;
+        link(id, position);
+        return previous;
+    }
+
+    /**
+     * Appends the {@link Subtask}. Only appending is supported.
+     *
+     * @throws IllegalArgumentException if a subtask with the same ID is already in the list.
+     */
+    @Override
+    public void add(int index, Subtask subtask) {
+        Objects.requireNonNull(subtask);
+        if (index != size) {
+            throw new UnsupportedOperationException("Subtasks can only be appended");
+        }
+        final long id = idOf(subtask);
+        if (position(id) >= 0) {
+            throw new IllegalArgumentException("Subtask " + id + " is already in the list");
+        }
+        if (end == values.length) {
+            grow();
+        }
+        values[end] = subtask;
+        ids[end] = id;
+        link(id, end);
+        end++;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Subtask remove(int index) {
+        Objects.checkIndex(index, size);
+        final int position = positionAt(index);
+        final Subtask removed = values[position];
+        removeAt(position);
+        compactIfSparse();
+        return removed;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof Subtask)) {
+            return false;
+        }
+        final int position = positionOf((Subtask) o);
+        if (position < 0) {
+            return false;
+        }
+        removeAt(position);
+        compactIfSparse();
+        return true;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Subtask)) {
+            return -1;
+        }
+        final int position = positionOf((Subtask) o);
+        return position < 0 ? -1 : indexAt(position);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Subtask && positionOf((Subtask) o) >= 0;
+    }
+
+    /**
+     * Returns iterator that walks the arrays skipping holes, so iteration takes O(n) with holes as well.
+     * Removal by the iterator leaves a hole and never moves the following subtasks.
+     */
+    @Override
+    public Iterator<Subtask> iterator() {
+        return new Iterator<>() {
+            private int next = skipHoles(0);
+            private int last = -1;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next < end;
+            }
+
+            @Override
+            public Subtask next() {
+                checkForComodification();
+                if (next >= end) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                next = skipHoles(next + 1);
+                return values[last];
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                checkForComodification();
+                removeAt(last);
+                last = -1;
+                expectedModCount = modCount;
+            }
+
+            private void checkForComodification() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void clear() {
+        values = new Subtask[MIN_CAPACITY];
+        ids = new long[MIN_CAPACITY];
+        table = new int[MIN_CAPACITY * 2];
+        end = 0;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Returns the {@link Subtask} with the given ID.
+     *
+     * @param id unique id of the {@link Subtask}.
+     * @return {@link Subtask} or null if it is not in the list.
+     */
+    Subtask getById(long id) {
+        final int position = position(id);
+        return position < 0 ? null : values[position];
+    }
+
+    /**
+     * Replaces the stored {@link Subtask} with the same ID as the given one.
+     *
+     * @param subtask new version of the {@link Subtask}.
+     * @return replaced {@link Subtask} or null if there is no subtask with the same ID.
+     */
+    Subtask replace(Subtask subtask) {
+        final int position = positionOf(subtask);
+        if (position < 0) {
+            return null;
+        }
+        final Subtask previous = values[position];
+        values[position] = subtask;
+        return previous;
+    }
+
+    /**
+     * Removes the {@link Subtask} with the same ID as the given one.
+     *
+     * @param subtask {@link Subtask} that should be removed.
+     * @return removed {@link Subtask} or null if it is not in the list.
+     */
+    Subtask removeSame(Subtask subtask) {
+        final int position = positionOf(subtask);
+        if (position < 0) {
+            return null;
+        }
+        final Subtask removed = values[position];
+        removeAt(position);
+        compactIfSparse();
+        return removed;
+    }
+
+    private int positionOf(Subtask subtask) {
+        if (subtask.getId() != null) {
+            return position(subtask.getId());
+        }
+        for (int i = 0; i < end; i++) {
+            if (values[i] != null && values[i].getId() == null && values[i].equals(subtask)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns position in the arrays of the subtask with the given list index.
+     */
+    private int positionAt(int index) {
+        if (size == end) {
+            return index;
+        }
+        int position = skipHoles(0);
+        for (int i = 0; i < index; i++) {
+            position = skipHoles(position + 1);
+        }
+        return position;
+    }
+
+    /**
+     * Returns list index of the subtask at the given position in the arrays.
+     */
+    private int indexAt(int position) {
+        if (size == end) {
+            return position;
+        }
+        int index = 0;
+        for (int i = 0; i < position; i++) {
+            if (values[i] != null) {
+                index++;
+            }
+        }
+        return index;
+    }
+
+    private int skipHoles(int position) {
+        while (position < end && values[position] == null) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Leaves a hole at the position, the other subtasks are not moved.
+     */
+    private void removeAt(int position) {
+        if (ids[position] != NO_ID) {
+            unlink(ids[position]);
+        }
+        values[position] = null;
+        ids[position] = NO_ID;
+        size--;
+        modCount++;
+        while (end > 0 && values[end - 1] == null) {
+            end--;
+        }
+    }
+
+    private void compactIfSparse() {
+        if (end - size > MIN_CAPACITY && end - size > end / 2) {
+            compact();
+        }
+    }
+
+    /**
+     * Squeezes out holes left by removed subtasks, so list indexes match positions in the arrays again.
+     */
+    private void compact() {
+        int target = 0;
+        for (int i = 0; i < end; i++) {
+            if (values[i] != null) {
+                values[target] = values[i];
+                ids[target] = ids[i];
+                target++;
+            }
+        }
+        Arrays.fill(values, target, end, null);
+        end = target;
+        rebuildTable(table.length);
+    }
+
+    /**
+     * Makes room for one more subtask. Holes are squeezed out instead of growing if they take a quarter of the
+     * arrays, so every compaction frees enough room to pay for itself.
+     */
+    private void grow() {
+        if (end - size >= end / 4 && size < end) {
+            compact();
+            return;
+        }
+        values = Arrays.copyOf(values, values.length * 2);
+        ids = Arrays.copyOf(ids, ids.length * 2);
+        rebuildTable(values.length * 2);
+    }
+
+    private void rebuildTable(int capacity) {
+        table = new int[capacity];
+        for (int i = 0; i < end; i++) {
+            if (ids[i] != NO_ID) {
+                link(ids[i], i);
+            }
+        }
+    }
+
+    private int position(long id) {
+        if (id == NO_ID) {
+            return -1;
+        }
+        final int mask = table.length - 1;
+        for (int slot = hash(id) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (ids[table[slot] - 1] == id) {
+                return table[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    private void link(long id, int position) {
+        if (id == NO_ID) {
+            return;
+        }
+        final int mask = table.length - 1;
+        int slot = hash(id) & mask;
+        while (table[slot] != 0 && ids[table[slot] - 1] != id) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = position + 1;
+    }
+
+    /**
+     * Removes the ID from the table shifting back the following entries of its probe sequence.
+     */
+    private void unlink(long id) {
+        final int mask = table.length - 1;
+        int slot = hash(id) & mask;
+        while (table[slot] != 0 && ids[table[slot] - 1] != id) {
+            slot = (slot + 1) & mask;
+        }
+        if (table[slot] == 0) {
+            return;
+        }
+        int hole = slot;
+        for (int next = (hole + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            final int home = hash(ids[table[next] - 1]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table[hole] = table[next];
+                hole = next;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    private static long idOf(Subtask subtask) {
+        return subtask.getId() == null ? NO_ID : subtask.getId();
+    }
+
+    private static int hash(long id) {
+        final long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -1,24 +1,50 @@
 package org.kamenkov.java_kanban.task;
 
+import com.google.gson.annotations.JsonAdapter;
 import org.kamenkov.java_kanban.Status;
+import org.kamenkov.java_kanban.utils.adapters.EpochSecondAdapter;
+import org.kamenkov.java_kanban.utils.adapters.StatusAdapter;
+import org.kamenkov.java_kanban.utils.adapters.TaskTypeAdapter;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
+/**
+ * Task stores its dates as epoch seconds and its enums as ordinals, so it takes one small object on the heap.
+ * The public getters build {@link LocalDateTime} and enum values on demand, the hot paths compare the primitive
+ * values. JSON representation is the same as for the object fields.
+ */
 public class Task {
 
-    private Type type;
+    /**
+     * Epoch second of the tasks without date.
+     */
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final Type[] TYPES = Type.values();
+    private static final Status[] STATUSES = Status.values();
+
+    @JsonAdapter(TaskTypeAdapter.class)
+    private byte type;
     private Long id;
     private String summary;
     private String description;
-    private Status status;
-    private LocalDateTime startDate;
+    @JsonAdapter(StatusAdapter.class)
+    private byte status;
+    @JsonAdapter(EpochSecondAdapter.class)
+    private long startDate = NO_DATE;
     long durationInMinutes;
 
     public Task(String summary, String description) {
         this.summary = summary;
         this.description = description;
-        this.status = Status.NEW;
-        this.type = Type.TASK;
+        setStatus(Status.NEW);
+        setType(Type.TASK);
+    }
+
+    /* Used by Gson, so the fields without value in JSON keep their defaults */
+    private Task() {
+        this(null, null);
     }
 
     /**
@@ -27,11 +53,11 @@ public class Task {
      * @return type.
      */
     public Type getType() {
-        return type;
+        return TYPES[type];
     }
 
     public void setType(Type type) {
-        this.type = type;
+        this.type = (byte) type.ordinal();
     }
 
     /**
@@ -74,7 +100,7 @@ public class Task {
      * @return status.
      */
     public Status getStatus() {
-        return status;
+        return STATUSES[status];
     }
 
     /**
@@ -82,7 +108,7 @@ public class Task {
      * @param status {@link Status} that should be saved in status.
      */
     public void setStatus(Status status) {
-        this.status = status;
+        this.status = (byte) status.ordinal();
     }
 
     /**
@@ -108,15 +134,15 @@ public class Task {
      * @return startDate.
      */
     public LocalDateTime getStartDate() {
-        return startDate;
+        return toDate(startDate);
     }
 
     /**
-     * Updates start date of the task.
+     * Updates start date of the task, fractions of a second are dropped.
      * @param startDate the date should be set.
      */
     public void setStartDate(LocalDateTime startDate) {
-        this.startDate = startDate;
+        this.startDate = toEpochSecond(startDate);
     }
 
     /**
@@ -125,7 +151,34 @@ public class Task {
      * @return endDate.
      */
     public LocalDateTime getEndDate() {
-        return startDate == null ? null : startDate.plusMinutes(durationInMinutes);
+        return toDate(getEndEpochSecond());
+    }
+
+    /**
+     * Checks whether the task has start date.
+     *
+     * @return true if the start date is set.
+     */
+    public boolean hasStartDate() {
+        return startDate != NO_DATE;
+    }
+
+    /**
+     * Returns start date of the task without creating {@link LocalDateTime}.
+     *
+     * @return start date in epoch seconds or {@link #NO_DATE}.
+     */
+    public long getStartEpochSecond() {
+        return startDate;
+    }
+
+    /**
+     * Returns end date of the task without creating {@link LocalDateTime}.
+     *
+     * @return end date in epoch seconds or {@link #NO_DATE}.
+     */
+    public long getEndEpochSecond() {
+        return startDate == NO_DATE ? NO_DATE : startDate + durationInMinutes * 60;
     }
 
     /**
@@ -145,10 +198,30 @@ public class Task {
         this.durationInMinutes = durationInMinutes;
     }
 
+    /**
+     * Converts the date to epoch seconds.
+     *
+     * @param date date or null.
+     * @return epoch seconds or {@link #NO_DATE} if the date is null.
+     */
+    static long toEpochSecond(LocalDateTime date) {
+        return date == null ? NO_DATE : date.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Converts epoch seconds to the date.
+     *
+     * @param epochSecond epoch seconds or {@link #NO_DATE}.
+     * @return date or null.
+     */
+    static LocalDateTime toDate(long epochSecond) {
+        return epochSecond == NO_DATE ? null : LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
     @Override
     public String toString() {
-        return id + "," + type + "," + summary + "," + status + ","
-                + description + "," + startDate + "," + durationInMinutes + "," + getEndDate();
+        return id + "," + getType() + "," + summary + "," + getStatus() + ","
+                + description + "," + getStartDate() + "," + durationInMinutes + "," + getEndDate();
     }
 
     @Override
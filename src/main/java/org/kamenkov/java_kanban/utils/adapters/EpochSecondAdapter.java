@@ -0,0 +1,118 @@
+package org.kamenkov.java_kanban.utils.adapters;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.kamenkov.java_kanban.task.Task;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+
+/**
+ * Writes a date stored as epoch seconds in the same shape Gson uses for {@link LocalDateTime}:
+ * {@code {"date":{"year":..,"month":..,"day":..},"time":{"hour":..,"minute":..,"second":..,"nano":..}}}.
+ * {@link Task#NO_DATE} is written as null. Dates in ISO-8601 strings are accepted as well.
+ */
+public class EpochSecondAdapter extends TypeAdapter<Long> {
+
+    @Override
+    public void write(JsonWriter out, Long epochSecond) throws IOException {
+        if (epochSecond == null || epochSecond == Task.NO_DATE) {
+            out.nullValue();
+            return;
+        }
+        final LocalDateTime dateTime = LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+        out.beginObject();
+        out.name("date").beginObject();
+        out.name("year").value(dateTime.getYear());
+        out.name("month").value(dateTime.getMonthValue());
+        out.name("day").value(dateTime.getDayOfMonth());
+        out.endObject();
+        out.name("time").beginObject();
+        out.name("hour").value(dateTime.getHour());
+        out.name("minute").value(dateTime.getMinute());
+        out.name("second").value(dateTime.getSecond());
+        out.name("nano").value(0);
+        out.endObject();
+        out.endObject();
+    }
+
+    @Override
+    public Long read(JsonReader in) throws IOException {
+        final JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return Task.NO_DATE;
+        }
+        if (token == JsonToken.STRING) {
+            return LocalDateTime.parse(in.nextString()).toEpochSecond(ZoneOffset.UTC);
+        }
+        LocalDate date = LocalDate.EPOCH;
+        LocalTime time = LocalTime.MIDNIGHT;
+        in.beginObject();
+        while (in.hasNext()) {
+            final String name = in.nextName();
+            if ("date".equals(name)) {
+                date = readDate(in);
+            } else if ("time".equals(name)) {
+                time = readTime(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return LocalDateTime.of(date, time).toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDate readDate(JsonReader in) throws IOException {
+        int year = 1970;
+        int month = 1;
+        int day = 1;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "year":
+                    year = in.nextInt();
+                    break;
+                case "month":
+                    month = in.nextInt();
+                    break;
+                case "day":
+                    day = in.nextInt();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return LocalDate.of(year, month, day);
+    }
+
+    private static LocalTime readTime(JsonReader in) throws IOException {
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "hour":
+                    hour = in.nextInt();
+                    break;
+                case "minute":
+                    minute = in.nextInt();
+                    break;
+                case "second":
+                    second = in.nextInt();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return LocalTime.of(hour, minute, second);
+    }
+}
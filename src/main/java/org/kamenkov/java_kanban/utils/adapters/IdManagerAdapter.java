@@ -0,0 +1,48 @@
+package org.kamenkov.java_kanban.utils.adapters;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.kamenkov.java_kanban.managers.BlockIdManager;
+
+import java.io.IOException;
+
+/**
+ * Writes {@link BlockIdManager} as {@code {"lastId": 7}} with the last issued ID and reads it back,
+ * so a loaded manager continues after the saved ID.
+ */
+public class IdManagerAdapter extends TypeAdapter<BlockIdManager> {
+
+    private static final String LAST_ID = "lastId";
+
+    @Override
+    public void write(JsonWriter jsonWriter, BlockIdManager manager) throws IOException {
+        if (manager == null) {
+            jsonWriter.nullValue();
+            return;
+        }
+        jsonWriter.beginObject();
+        jsonWriter.name(LAST_ID).value(manager.getLastIssuedId());
+        jsonWriter.endObject();
+    }
+
+    @Override
+    public BlockIdManager read(JsonReader jsonReader) throws IOException {
+        if (jsonReader.peek() == JsonToken.NULL) {
+            jsonReader.nextNull();
+            return new BlockIdManager();
+        }
+        long lastId = 0L;
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            if (LAST_ID.equals(jsonReader.nextName()) && jsonReader.peek() != JsonToken.NULL) {
+                lastId = jsonReader.nextLong();
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+        return new BlockIdManager(lastId);
+    }
+}
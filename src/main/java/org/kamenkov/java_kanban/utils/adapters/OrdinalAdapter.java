@@ -0,0 +1,43 @@
+package org.kamenkov.java_kanban.utils.adapters;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Writes an {@link Enum} stored as its ordinal byte by the name of the constant, as Gson writes enums.
+ * Nulls and unknown names are read as null, so the field keeps its default value.
+ *
+ * @param <E> type of the enum.
+ */
+abstract class OrdinalAdapter<E extends Enum<E>> extends TypeAdapter<Byte> {
+
+    private final E[] constants;
+
+    OrdinalAdapter(E[] constants) {
+        this.constants = constants;
+    }
+
+    @Override
+    public void write(JsonWriter out, Byte ordinal) throws IOException {
+        out.value(constants[ordinal].name());
+    }
+
+    @Override
+    public Byte read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        final String name = in.nextString();
+        for (E constant : constants) {
+            if (constant.name().equals(name)) {
+                return (byte) constant.ordinal();
+            }
+        }
+        return null;
+    }
+}
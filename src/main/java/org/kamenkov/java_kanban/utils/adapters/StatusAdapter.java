@@ -0,0 +1,13 @@
+package org.kamenkov.java_kanban.utils.adapters;
+
+import org.kamenkov.java_kanban.Status;
+
+/**
+ * Writes {@link Status} stored as its ordinal byte by name.
+ */
+public class StatusAdapter extends OrdinalAdapter<Status> {
+
+    public StatusAdapter() {
+        super(Status.values());
+    }
+}
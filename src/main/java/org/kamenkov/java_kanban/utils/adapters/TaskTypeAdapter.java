@@ -0,0 +1,13 @@
+package org.kamenkov.java_kanban.utils.adapters;
+
+import org.kamenkov.java_kanban.task.Type;
+
+/**
+ * Writes {@link Type} stored as its ordinal byte by name.
+ */
+public class TaskTypeAdapter extends OrdinalAdapter<Type> {
+
+    public TaskTypeAdapter() {
+        super(Type.values());
+    }
+}
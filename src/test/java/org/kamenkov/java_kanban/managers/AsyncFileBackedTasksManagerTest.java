@@ -0,0 +1,115 @@
+package org.kamenkov.java_kanban.managers;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kamenkov.java_kanban.exceptions.ManagerSaveException;
+import org.kamenkov.java_kanban.task.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncFileBackedTasksManagerTest extends TaskManagerTest<AsyncFileBackedTasksManager> {
+
+    @TempDir
+    File tempDir;
+    String path;
+
+    @BeforeEach
+    void beforeEach() {
+        path = new File(tempDir, "backup.csv").getPath();
+        taskManager = new AsyncFileBackedTasksManager(path, 60_000);
+    }
+
+    @AfterEach
+    void afterEach() {
+        taskManager.close();
+    }
+
+    @Test
+    void mutationsAreCoalesced() {
+        for (int i = 0; i < 10; i++) {
+            taskManager.createTask(new Task("Summary" + i, "Description" + i));
+        }
+        assertFalse(new File(path).exists());
+        taskManager.flush();
+        assertEquals(9, taskManager.getCoalescedWrites());
+        assertEquals(10, FileBackedTasksManager.loadFromFile(new File(path)).getAllTaskObjects().size());
+    }
+
+    @Test
+    void flushInBackground() throws InterruptedException {
+        taskManager.close();
+        taskManager = new AsyncFileBackedTasksManager(path, 10);
+        taskManager.createTask(new Task("Summary", "Description"));
+        for (int i = 0; i < 500 && !new File(path).exists(); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, FileBackedTasksManager.loadFromFile(new File(path)).getAllTaskObjects().size());
+    }
+
+    @Test
+    void closeWritesPendingChanges() {
+        Long id = taskManager.createTask(new Task("Summary", "Description"));
+        taskManager.getTaskObjectById(id);
+        taskManager.close();
+        TaskManager loadedManager = AsyncFileBackedTasksManager.loadFromFile(new File(path), 60_000);
+        assertEquals(1, loadedManager.getAllTaskObjects().size());
+        assertEquals(1, loadedManager.getHistory().size());
+        ((AsyncFileBackedTasksManager) loadedManager).close();
+    }
+
+    @Test
+    void failedFlushKeepsHistoryLog() throws IOException {
+        Long id = taskManager.createTask(new Task("Summary", "Description"));
+        taskManager.flush();
+        taskManager.getTaskObjectById(id);
+        taskManager.createTask(new Task("Summary", "Description"));
+        File backup = new File(path);
+        File blocker = new File(backup, "blocker");
+        assertTrue(backup.delete() && blocker.mkdirs());
+        assertThrows(ManagerSaveException.class, taskManager::flush);
+        assertEquals(id + "\n", Files.readString(FileBackedTasksManager.getHistoryPath(path)));
+        assertTrue(blocker.delete() && backup.delete());
+        taskManager.flush();
+        assertEquals("", Files.readString(FileBackedTasksManager.getHistoryPath(path)));
+        assertEquals(1, FileBackedTasksManager.loadFromFile(backup).getHistory().size());
+    }
+
+    @Test
+    void viewsDuringFlushAreKept() throws IOException {
+        taskManager.close();
+        final long[] viewedId = {-1};
+        taskManager = new AsyncFileBackedTasksManager(path, 60_000) {
+            @Override
+            long getHistoryLogMark() {
+                final long mark = super.getHistoryLogMark();
+                if (viewedId[0] > 0) {
+                    getTaskObjectById(viewedId[0]);
+                }
+                return mark;
+            }
+        };
+        Long first = taskManager.createTask(new Task("Summary1", "Description1"));
+        Long second = taskManager.createTask(new Task("Summary2", "Description2"));
+        taskManager.flush();
+        taskManager.getTaskObjectById(first);
+        taskManager.createTask(new Task("Summary3", "Description3"));
+        viewedId[0] = second;
+        taskManager.flush();
+        assertEquals(second + "\n", Files.readString(FileBackedTasksManager.getHistoryPath(path)));
+        TaskManager loadedManager = FileBackedTasksManager.loadFromFile(new File(path));
+        assertEquals(List.of(first, second), getIds(loadedManager.getHistory()));
+    }
+
+    private static List<Long> getIds(Collection<Task> tasks) {
+        return tasks.stream().map(Task::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,75 @@
+package org.kamenkov.java_kanban.managers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockIdManagerTest {
+
+    @Test
+    void reserveBlocksOfConsecutiveIds() {
+        BlockIdManager idManager = new BlockIdManager(5);
+        assertEquals(6L, idManager.getLastId());
+        assertEquals(7L, idManager.reserveBlock(10));
+        assertEquals(17L, idManager.getLastId());
+        assertEquals(17L, idManager.getLastIssuedId());
+        assertThrows(IllegalArgumentException.class, () -> idManager.reserveBlock(0));
+    }
+
+    @Test
+    void persistMarkAheadOfIssuedIds() {
+        List<Long> marks = new ArrayList<>();
+        BlockIdManager idManager = new BlockIdManager(0, 10, marks::add);
+        for (int i = 0; i < 25; i++) {
+            idManager.getLastId();
+        }
+        assertEquals(List.of(11L, 22L, 33L), marks);
+        BlockIdManager restarted = new BlockIdManager(marks.get(marks.size() - 1), 10, marks::add);
+        assertEquals(34L, restarted.getLastId());
+    }
+
+    @Test
+    void concurrentThreadsGetUniqueIds() throws Exception {
+        final BlockIdManager idManager = new BlockIdManager(0, 100, mark -> {});
+        final Set<Long> ids = ConcurrentHashMap.newKeySet();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                final boolean blocks = thread % 2 == 0;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 1_000; i++) {
+                        if (blocks) {
+                            final long first = idManager.reserveBlock(5);
+                            for (long id = first; id < first + 5; id++) {
+                                assertTrue(ids.add(id));
+                            }
+                        } else {
+                            assertTrue(ids.add(idManager.getLastId()));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(4 * 1_000 * 5 + 4 * 1_000, ids.size());
+        assertEquals(ids.size(), idManager.getLastIssuedId());
+    }
+}
@@ -0,0 +1,80 @@
+package org.kamenkov.java_kanban.managers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kamenkov.java_kanban.task.Task;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentHistoryManagerTest extends HistoryManagerTest<ConcurrentHistoryManager> {
+
+    @BeforeEach
+    void beforeEach() {
+        historyManager = new ConcurrentHistoryManager();
+    }
+
+    @Test
+    void evictOldestViewsOverCapacity() {
+        historyManager = new ConcurrentHistoryManager(3);
+        List<Task> tasks = new ArrayList<>();
+        for (long id = 1; id <= 5; id++) {
+            Task task = new Task("Summary", "Description");
+            task.setId(id);
+            tasks.add(task);
+        }
+        historyManager.add(tasks.get(0));
+        historyManager.add(tasks.get(1));
+        historyManager.add(tasks.get(2));
+        historyManager.add(tasks.get(0));
+        historyManager.add(tasks.get(3));
+        assertEquals(List.of(tasks.get(2), tasks.get(0), tasks.get(3)), historyManager.getHistory());
+        historyManager.add(tasks.get(4));
+        assertEquals(List.of(tasks.get(0), tasks.get(3), tasks.get(4)), historyManager.getHistory());
+    }
+
+    @Test
+    void concurrentViewsKeepEveryTaskOnce() throws Exception {
+        final int capacity = 50;
+        historyManager = new ConcurrentHistoryManager(capacity);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                final long seed = thread;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 5_000; i++) {
+                        Task task = new Task("Summary", "Description");
+                        task.setId((seed * 31 + i * 7) % 100);
+                        if (i % 10 == 0) {
+                            historyManager.remove(task.getId());
+                        } else {
+                            historyManager.add(task);
+                        }
+                        final List<Task> history = historyManager.getHistory();
+                        assertEquals(history.size(), new HashSet<>(history).size());
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        final List<Task> history = historyManager.getHistory();
+        assertTrue(history.size() <= capacity);
+        assertEquals(history.size(), new HashSet<>(history).size());
+    }
+}
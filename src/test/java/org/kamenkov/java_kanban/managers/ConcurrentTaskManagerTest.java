@@ -0,0 +1,141 @@
+package org.kamenkov.java_kanban.managers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kamenkov.java_kanban.Status;
+import org.kamenkov.java_kanban.task.Epic;
+import org.kamenkov.java_kanban.task.Subtask;
+import org.kamenkov.java_kanban.task.Task;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentTaskManagerTest extends TaskManagerTest<ConcurrentTaskManager> {
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 500;
+
+    @BeforeEach
+    void beforeEach() {
+        taskManager = new ConcurrentTaskManager();
+    }
+
+    @Test
+    void updateEpicKeepsSubtasks() {
+        final Long epicId = taskManager.createEpic(new Epic("Summary", "Description"));
+        Subtask subtask = new Subtask("Summary1", "Description1", epicId);
+        subtask.setStatus(Status.DONE);
+        taskManager.createSubtask(subtask);
+        taskManager.updateEpic(new Epic("Summary2", "Description2"), epicId);
+        final Epic savedEpic = taskManager.getEpicObjectById(epicId);
+        assertEquals("Summary2", savedEpic.getSummary());
+        assertEquals(List.of(subtask), savedEpic.getSubtaskObjects());
+        assertEquals(Status.DONE, savedEpic.getStatus());
+    }
+
+    @Test
+    void removedEpicIsNotLockedAgain() {
+        final Long epicId = taskManager.createEpic(new Epic("Summary", "Description"));
+        taskManager.removeEpic(epicId);
+        assertThrows(NullPointerException.class,
+                () -> taskManager.createSubtask(new Subtask("Summary", "Description", epicId)));
+        assertThrows(NullPointerException.class, () -> taskManager.removeEpic(epicId));
+        taskManager.updateEpic(new Epic("Summary", "Description"), epicId);
+        assertNull(taskManager.getEpicObjectById(epicId));
+        assertNull(taskManager.getSubtaskObjectsByParentId(epicId));
+    }
+
+    @Test
+    void concurrentUpdatesDoNotRestoreRemovedTasks() throws Exception {
+        final LocalDateTime start = LocalDateTime.of(2022, 1, 1, 0, 0);
+        final List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < OPERATIONS; i++) {
+            Task task = new Task("Task", "Description");
+            task.setStartDate(start.plusMinutes(i * 10L));
+            task.setDurationInMinutes(5);
+            ids.add(taskManager.createTask(task));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                final boolean remover = thread == 0;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < OPERATIONS; i++) {
+                        if (remover) {
+                            taskManager.removeTask(ids.get(i));
+                            continue;
+                        }
+                        Task task = new Task("Updated", "Description");
+                        task.setStartDate(start.plusMinutes(i * 10L));
+                        task.setDurationInMinutes(5);
+                        taskManager.updateTask(task, ids.get(i));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(taskManager.getAllTaskObjects().isEmpty());
+        assertTrue(taskManager.getPrioritizedTasks().isEmpty());
+        for (int i = 0; i < OPERATIONS; i++) {
+            Task task = new Task("Task", "Description");
+            task.setStartDate(start.plusMinutes(i * 10L));
+            task.setDurationInMinutes(5);
+            taskManager.createTask(task);
+        }
+    }
+
+    @Test
+    void concurrentMutationsKeepIndexesConsistent() throws Exception {
+        final Long epicId = taskManager.createEpic(new Epic("Summary", "Description"));
+        final LocalDateTime start = LocalDateTime.of(2022, 1, 1, 0, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                final int offset = thread * OPERATIONS;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < OPERATIONS; i++) {
+                        Task task = new Task("Task", "Description");
+                        task.setStartDate(start.plusMinutes((offset + i) * 10L));
+                        task.setDurationInMinutes(5);
+                        final Long taskId = taskManager.createTask(task);
+                        Subtask subtask = new Subtask("Subtask", "Description", epicId);
+                        subtask.setStatus(Status.DONE);
+                        final Long subtaskId = taskManager.createSubtask(subtask);
+                        taskManager.getTaskObjectById(taskId);
+                        if (i % 2 == 0) {
+                            taskManager.removeTask(taskId);
+                            taskManager.removeSubtask(subtaskId);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        final int expected = THREADS * OPERATIONS / 2;
+        assertEquals(expected, taskManager.getAllTaskObjects().size());
+        assertEquals(expected, taskManager.getAllSubtaskObjects().size());
+        assertEquals(expected, taskManager.getSubtaskObjectsByParentId(epicId).size());
+        assertEquals(expected * 2 + 1, taskManager.getPrioritizedTasks().size());
+        assertEquals(Status.DONE, taskManager.getEpicObjectById(epicId).getStatus());
+        assertEquals(Math.min(expected + 1, ConcurrentHistoryManager.DEFAULT_CAPACITY),
+                taskManager.getHistory().size());
+    }
+}
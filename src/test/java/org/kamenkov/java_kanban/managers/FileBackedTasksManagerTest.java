@@ -3,15 +3,24 @@ package org.kamenkov.java_kanban.managers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.kamenkov.java_kanban.Status;
 import org.kamenkov.java_kanban.task.Epic;
 import org.kamenkov.java_kanban.task.Subtask;
 import org.kamenkov.java_kanban.task.Task;
+import org.kamenkov.java_kanban.task.Type;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -118,4 +127,228 @@ class FileBackedTasksManagerTest extends TaskManagerTest<FileBackedTasksManager>
                 Files.readAllLines(file.toPath()));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void viewsAreAppendedToHistoryLog(@TempDir File tempDir) throws IOException {
+        String path = new File(tempDir, "TestOutput.csv").getPath();
+        FileBackedTasksManager manager = new FileBackedTasksManager(path);
+        Long taskId = manager.createTask(new Task("Summary1", "Description1"));
+        Long epicId = manager.createEpic(new Epic("Summary2", "Description2"));
+        final List<String> snapshot = Files.readAllLines(new File(path).toPath());
+        manager.getEpicObjectById(epicId);
+        manager.getTaskObjectById(taskId);
+        manager.getEpicObjectById(epicId);
+        manager.close();
+        assertLinesMatch(snapshot, Files.readAllLines(new File(path).toPath()));
+        assertLinesMatch(List.of(String.valueOf(epicId), String.valueOf(taskId), String.valueOf(epicId)),
+                Files.readAllLines(FileBackedTasksManager.getHistoryPath(path)));
+        TaskManager loadedTaskManager = FileBackedTasksManager.loadFromFile(new File(path));
+        assertEquals(List.of(taskId, epicId),
+                loadedTaskManager.getHistory().stream().map(Task::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void primitiveIdsArePersisted(@TempDir File tempDir) {
+        String path = new File(tempDir, "TestOutput.csv").getPath();
+        FileBackedTasksManager manager = new FileBackedTasksManager(path);
+        long taskId = manager.createTask(new Task("Summary1", "Description1"));
+        long removedId = manager.createTask(new Task("Summary2", "Description2"));
+        manager.getTaskObjectById(taskId);
+        manager.removeTask(removedId);
+        manager.close();
+        TaskManager loadedTaskManager = FileBackedTasksManager.loadFromFile(new File(path));
+        assertEquals(List.of(taskId),
+                loadedTaskManager.getAllTaskObjects().stream().map(Task::getId).collect(Collectors.toList()));
+        assertEquals(List.of(taskId),
+                loadedTaskManager.getHistory().stream().map(Task::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void saveAndLoadBinarySnapshot(@TempDir File tempDir) {
+        String path = new File(tempDir, "TestOutput.bin").getPath();
+        FileBackedTasksManager manager = new FileBackedTasksManager(path, SnapshotFormat.BINARY);
+        Long epicId = manager.createEpic(new Epic("Epic, with comma", "Описание эпика"));
+        Subtask subtask = new Subtask("Subtask", null, epicId);
+        subtask.setStartDate(LocalDateTime.of(2022, 7, 3, 10, 10, 30));
+        subtask.setDurationInMinutes(250);
+        Long subtaskId = manager.createSubtask(subtask);
+        Long taskId = manager.createTask(new Task("Task", "Description"));
+        manager.getTaskObjectById(taskId);
+        manager.getSubtaskObjectById(subtaskId);
+        manager.close();
+        assertEquals(SnapshotFormat.BINARY, FileBackedTasksManager.detectFormat(new File(path)));
+        TaskManager loadedTaskManager = FileBackedTasksManager.loadFromFile(new File(path));
+        assertEquals(List.of(taskId, subtaskId),
+                loadedTaskManager.getHistory().stream().map(Task::getId).collect(Collectors.toList()));
+        Epic epic = loadedTaskManager.getEpicObjectById(epicId);
+        assertEquals("Epic, with comma", epic.getSummary());
+        assertEquals(1, epic.getSubtaskObjects().size());
+        Subtask loadedSubtask = loadedTaskManager.getSubtaskObjectById(subtaskId);
+        assertNull(loadedSubtask.getDescription());
+        assertEquals(subtask.getStartDate(), loadedSubtask.getStartDate());
+        assertEquals(250, loadedSubtask.getDurationInMinutes());
+        assertEquals(epicId, loadedSubtask.getParentId());
+    }
+
+    @Test
+    void loadBinarySnapshotWithStartInEpochMinutes(@TempDir File tempDir) throws IOException {
+        File file = new File(tempDir, "TestOutput.bin");
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(content)) {
+            out.writeInt(BinarySnapshot.MAGIC);
+            out.writeShort(1);
+            out.writeInt(0);
+            out.writeInt(1);
+            out.writeInt(Long.BYTES * 4 + 2 + Integer.BYTES * 2);
+            out.writeLong(1L);
+            out.writeByte(Type.TASK.ordinal());
+            out.writeByte(Status.NEW.ordinal());
+            out.writeInt(-1);
+            out.writeInt(-1);
+            out.writeLong(LocalDateTime.of(2022, 7, 3, 10, 10).toEpochSecond(ZoneOffset.UTC) / 60);
+            out.writeLong(15);
+            out.writeLong(Long.MIN_VALUE);
+            out.writeInt(0);
+        }
+        Files.write(file.toPath(), content.toByteArray());
+        Task task = FileBackedTasksManager.loadFromFile(file).getTaskObjectById(1L);
+        assertEquals(LocalDateTime.of(2022, 7, 3, 10, 10), task.getStartDate());
+        assertEquals(15, task.getDurationInMinutes());
+    }
+
+    @Test
+    void convertBetweenFormats(@TempDir File tempDir) throws IOException {
+        File source = new File("src/test/resources/TestLoadFromFile.csv");
+        File binary = new File(tempDir, "TestOutput.bin");
+        File csv = new File(tempDir, "TestOutput.csv");
+        FileBackedTasksManager.convert(source, binary, SnapshotFormat.BINARY);
+        assertEquals(SnapshotFormat.BINARY, FileBackedTasksManager.detectFormat(binary));
+        FileBackedTasksManager.convert(binary, csv, SnapshotFormat.CSV);
+        assertEquals(SnapshotFormat.CSV, FileBackedTasksManager.detectFormat(csv));
+        assertLinesMatch(Files.readAllLines(source.toPath()), Files.readAllLines(csv.toPath()));
+    }
+
+    @Test
+    void loadFromFileWithWindowsLineBreaks(@TempDir File tempDir) throws IOException {
+        File file = new File(tempDir, "TestInput.csv");
+        Files.writeString(file.toPath(), HEADER + "\r\n"
+                + "1,TASK,Task,DONE,Description,2022-07-04T10:00:30,11,2022-07-04T10:11:30\r\n"
+                + "2,EPIC,Epic,NEW,,null,0,null\r\n"
+                + "3,SUBTASK,Subtask,NEW,Description,null,0,null,2\r\n"
+                + "\r\n"
+                + "3,1\r\n");
+        TaskManager loadedTaskManager = FileBackedTasksManager.loadFromFile(file);
+        assertEquals(List.of(3L, 1L),
+                loadedTaskManager.getHistory().stream().map(Task::getId).collect(Collectors.toList()));
+        Task task = loadedTaskManager.getTaskObjectById(1L);
+        assertEquals(LocalDateTime.of(2022, 7, 4, 10, 0, 30), task.getStartDate());
+        assertEquals("Description", task.getDescription());
+        assertEquals("", loadedTaskManager.getEpicObjectById(2L).getDescription());
+        assertEquals(2L, loadedTaskManager.getSubtaskObjectById(3L).getParentId());
+    }
+
+    @Test
+    void readSnapshotInParallelChunks(@TempDir File tempDir) {
+        String path = new File(tempDir, "TestOutput.csv").getPath();
+        FileBackedTasksManager manager = new FileBackedTasksManager(path);
+        for (int i = 0; i < 20; i++) {
+            Long epicId = manager.createEpic(new Epic("Epic" + i, "Description" + i));
+            manager.createSubtask(new Subtask("Subtask" + i, "Description" + i, epicId));
+            manager.getEpicObjectById(epicId);
+        }
+        manager.save(path);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (File file : List.of(new File(path), new File("src/test/resources/TestLoadFromFile.csv"))) {
+                TasksSnapshot expected = FileBackedTasksManager.readSnapshot(file);
+                TasksSnapshot actual = FileBackedTasksManager.readSnapshot(file, pool, 1);
+                assertEquals(expected.getTasks().stream().map(Task::toString).collect(Collectors.toList()),
+                        actual.getTasks().stream().map(Task::toString).collect(Collectors.toList()));
+                assertEquals(new ArrayList<>(expected.getHistory()), new ArrayList<>(actual.getHistory()));
+            }
+            TaskManager loadedTaskManager = FileBackedTasksManager.loadFromFileInParallel(new File(path), pool);
+            assertEquals(20, loadedTaskManager.getAllEpicObjects().size());
+            assertEquals(20, loadedTaskManager.getAllSubtaskObjects().size());
+            assertEquals(20, loadedTaskManager.getHistory().size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void saveReplacesFileAtomically(@TempDir File tempDir) {
+        File file = new File(tempDir, "TestOutput.csv");
+        FileBackedTasksManager manager = new FileBackedTasksManager(file.getPath());
+        manager.createTask(new Task("Summary1", "Description1"));
+        final String[] files = tempDir.list();
+        Arrays.sort(files);
+        assertArrayEquals(new String[]{"TestOutput.csv", "TestOutput.csv.history", "TestOutput.csv.ids",
+                "TestOutput.csv.sum"}, files);
+        assertTrue(FileBackedTasksManager.isIntact(file));
+    }
+
+    @Test
+    void checksumFileStaysSmall(@TempDir File tempDir) throws IOException {
+        File file = new File(tempDir, "TestOutput.csv");
+        FileBackedTasksManager manager = new FileBackedTasksManager(file.getPath());
+        for (int i = 0; i < 1000; i++) {
+            manager.createTask(new Task("Summary" + i, "Description" + i));
+            assertTrue(FileBackedTasksManager.isIntact(file));
+        }
+        assertTrue(Files.size(SnapshotFile.getChecksumPath(file.toPath())) < 8192);
+    }
+
+    @Test
+    void loadPreviousSnapshotIfCrashedBeforeRename(@TempDir File tempDir) throws IOException {
+        File file = new File(tempDir, "TestOutput.csv");
+        FileBackedTasksManager manager = new FileBackedTasksManager(file.getPath());
+        Long taskId = manager.createTask(new Task("Summary1", "Description1"));
+        manager.getTaskObjectById(taskId);
+        manager.save(file.getPath());
+        final byte[] previous = Files.readAllBytes(file.toPath());
+        manager.createTask(new Task("Summary2", "Description2"));
+        Files.write(file.toPath(), previous);
+        assertTrue(FileBackedTasksManager.isIntact(file));
+        TaskManager loadedTaskManager = FileBackedTasksManager.loadFromFile(file);
+        assertEquals(1, loadedTaskManager.getAllTaskObjects().size());
+        assertEquals(1, loadedTaskManager.getHistory().size());
+    }
+
+    @Test
+    void loadCompleteRecordsOfTornFile(@TempDir File tempDir) throws IOException {
+        for (SnapshotFormat format : SnapshotFormat.values()) {
+            File file = new File(tempDir, "TestOutput." + format);
+            FileBackedTasksManager manager = new FileBackedTasksManager(file.getPath(), format);
+            for (int i = 0; i < 3; i++) {
+                Long taskId = manager.createTask(new Task("Summary" + i, "Description" + i));
+                manager.getTaskObjectById(taskId);
+            }
+            manager.save(file.getPath());
+            final byte[] content = Files.readAllBytes(file.toPath());
+            final int tornLength = format == SnapshotFormat.CSV
+                    ? new String(content, StandardCharsets.UTF_8).indexOf("3,TASK") + 3
+                    : content.length - 60;
+            Files.write(file.toPath(), Arrays.copyOf(content, tornLength));
+            assertFalse(FileBackedTasksManager.isIntact(file));
+            TaskManager loadedTaskManager = FileBackedTasksManager.loadFromFile(file);
+            assertEquals(List.of(1L, 2L), loadedTaskManager.getAllTaskObjects().stream().map(Task::getId).sorted()
+                    .collect(Collectors.toList()), format.toString());
+            assertTrue(loadedTaskManager.getHistory().isEmpty());
+        }
+    }
+
+    @Test
+    void idsAreNotReusedAfterRestart(@TempDir File tempDir) throws IOException {
+        File file = new File(tempDir, "TestOutput.csv");
+        FileBackedTasksManager manager = new FileBackedTasksManager(file.getPath());
+        manager.createTask(new Task("Summary1", "Description1"));
+        manager.save(file.getPath());
+        final byte[] previous = Files.readAllBytes(file.toPath());
+        Long lastId = manager.createTask(new Task("Summary2", "Description2"));
+        manager.removeTask(lastId);
+        Files.write(file.toPath(), previous);
+        TaskManager loadedTaskManager = FileBackedTasksManager.loadFromFile(file, SnapshotFormat.CSV);
+        assertEquals(1, loadedTaskManager.getAllTaskObjects().size());
+        assertTrue(loadedTaskManager.createTask(new Task("Summary3", "Description3")) > lastId);
+    }
+}
@@ -124,6 +124,20 @@ abstract class HistoryManagerTest<T extends HistoryManager> {
         assertEquals(tasks, history);
     }
 
+    @Test
+    void removeNeighboursFromMiddle() {
+        List<Task> tasks = new ArrayList<>();
+        for (long id = 1; id <= 4; id++) {
+            Task task = new Task("Summary", "Description");
+            task.setId(id);
+            tasks.add(task);
+            historyManager.add(task);
+        }
+        historyManager.remove(2L);
+        historyManager.remove(3L);
+        assertEquals(List.of(tasks.get(0), tasks.get(3)), historyManager.getHistory());
+    }
+
     @Test
     void removeFromEnd() {
         List<Task> tasks = new ArrayList<>();
@@ -5,6 +5,10 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import org.junit.jupiter.api.*;
 import org.kamenkov.java_kanban.KVTaskClient;
+import org.kamenkov.java_kanban.Status;
+import org.kamenkov.java_kanban.exceptions.ManagerSaveException;
+import org.kamenkov.java_kanban.exceptions.VersionConflictException;
+import org.kamenkov.java_kanban.servers.ExecutorMode;
 import org.kamenkov.java_kanban.servers.HttpTaskServer;
 import org.kamenkov.java_kanban.servers.KVServer;
 import org.kamenkov.java_kanban.task.Epic;
@@ -20,7 +24,15 @@ import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
 
 public class HttpTaskManagerTest extends TaskManagerTest<HttpTasksManager> {
 
@@ -213,6 +225,57 @@ public class HttpTaskManagerTest extends TaskManagerTest<HttpTasksManager> {
         Assertions.assertEquals(taskManager.getPrioritizedTasks().size(), tasks.size());
     }
 
+    @Test
+    void fixedModeServesConcurrentRequests() throws Exception {
+        httpTaskServer.stop();
+        ConcurrentTaskManager concurrentManager = new ConcurrentTaskManager();
+        httpTaskServer = new HttpTaskServer(concurrentManager, ExecutorMode.FIXED, 4, 0);
+        httpTaskServer.start();
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(TASK_MANAGER_URL + "/task"))
+                .POST(HttpRequest.BodyPublishers.ofFile(Path.of("src/test/resources/DefaultTask.json"))).build();
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+        Set<String> ids = new HashSet<>();
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            Assertions.assertEquals(201, response.get().statusCode());
+            ids.add(response.get().body());
+        }
+        Assertions.assertEquals(50, ids.size());
+        Assertions.assertEquals(50, concurrentManager.getAllTaskObjects().size());
+    }
+
+    @Test
+    void multiUserManagerKeepsHistoryOfUsersApart() throws IOException, InterruptedException {
+        httpTaskServer.stop();
+        TaskManager multiUserManager = Managers.getMultiUserTaskManager();
+        Long firstId = multiUserManager.createTask(new Task("First", "description"));
+        Long secondId = multiUserManager.createTask(new Task("Second", "description"));
+        httpTaskServer = new HttpTaskServer(multiUserManager, ExecutorMode.FIXED, 2, 0);
+        httpTaskServer.start();
+        Assertions.assertEquals(200, getJsonTaskFromServerAs("alice", "task?id=" + firstId).statusCode());
+        Assertions.assertEquals(200, getJsonTaskFromServerAs("bob", "task?id=" + secondId).statusCode());
+        Assertions.assertEquals(200, getJsonTaskFromServerAs("bob", "task?id=" + firstId).statusCode());
+        List<Task> aliceHistory = gson.fromJson(getJsonTaskFromServerAs("alice", "history").body(),
+                new TypeToken<ArrayList<Task>>() {}.getType());
+        List<Task> bobHistory = gson.fromJson(getJsonTaskFromServerAs("bob", "history").body(),
+                new TypeToken<ArrayList<Task>>() {}.getType());
+        Assertions.assertEquals(List.of(firstId), aliceHistory.stream().map(Task::getId).collect(Collectors.toList()));
+        Assertions.assertEquals(List.of(secondId, firstId),
+                bobHistory.stream().map(Task::getId).collect(Collectors.toList()));
+        Assertions.assertEquals("[]", getJsonTaskFromServer("history").body());
+    }
+
+    @Test
+    void serverRejectsNonPositiveThreads() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new HttpTaskServer(taskManager, ExecutorMode.FIXED, 0, 0));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new HttpTaskServer(taskManager, ExecutorMode.WORK_STEALING, -1, 0));
+    }
+
     @Test
     void getHistoryFromServer() throws InterruptedException, IOException {
         Epic basicEpic = new Epic("summary", "description");
@@ -230,12 +293,212 @@ public class HttpTaskManagerTest extends TaskManagerTest<HttpTasksManager> {
         Assertions.assertEquals(taskManager.getHistory().size(), tasks.size());
     }
 
+    @Test
+    void loadReassemblesChangedTasks() throws IOException, InterruptedException {
+        Long epicId = taskManager.createEpic(new Epic("Epic", "description"));
+        Subtask doneSubtask = new Subtask("Subtask1", "description", epicId);
+        doneSubtask.setStatus(Status.DONE);
+        taskManager.createSubtask(doneSubtask);
+        Long removedSubtaskId = taskManager.createSubtask(new Subtask("Subtask2", "description", epicId));
+        Long taskId = taskManager.createTask(new Task("Task", "description"));
+        Task updatedTask = new Task("Updated task", "description");
+        updatedTask.setId(taskId);
+        taskManager.updateTask(updatedTask, taskId);
+        taskManager.removeSubtask(removedSubtaskId);
+        taskManager.removeTask(taskManager.createTask(new Task("Removed task", "description")));
+        taskManager.getTaskObjectById(taskId);
+        taskManager.getEpicObjectById(epicId);
+
+        Assertions.assertEquals("Updated task", gson.fromJson(kvTaskClient.load("test/task/" + taskId), Task.class)
+                .getSummary());
+        HttpTasksManager loadedManager = HttpTasksManager.load(KVSERVER_URL, "test");
+        Assertions.assertEquals(List.of(taskId), getIds(loadedManager.getAllTaskObjects()));
+        Assertions.assertEquals("Updated task", loadedManager.getTaskObjectById(taskId).getSummary());
+        Epic loadedEpic = loadedManager.getEpicObjectById(epicId);
+        Assertions.assertEquals(List.of(doneSubtask.getId()), getIds(loadedEpic.getSubtaskObjects()));
+        Assertions.assertEquals(Status.DONE, loadedEpic.getStatus());
+        Assertions.assertEquals(List.of(taskId, epicId), getIds(loadedManager.getHistory()));
+        Assertions.assertEquals(6L, loadedManager.createTask(new Task("New task", "description")));
+    }
+
+    @Test
+    void kvClientBatchAndAsyncRequests() throws Exception {
+        kvTaskClient.putAll(Map.of("batch/1", "{\"a\":1}", "batch/2", "[2]"));
+        kvTaskClient.putAsync("batch/3", "3").get();
+        Assertions.assertEquals("[2]", kvTaskClient.loadAsync("batch/2").get());
+        Assertions.assertNull(kvTaskClient.loadAsync("batch/4").get());
+        Assertions.assertEquals(Map.of("batch/1", "{\"a\":1}", "batch/3", "3"),
+                kvTaskClient.loadAll(List.of("batch/1", "batch/3", "batch/4")));
+        ExecutionException exception = Assertions.assertThrows(ExecutionException.class,
+                () -> kvTaskClient.putAsync("batch/5", "").get());
+        Assertions.assertTrue(exception.getCause() instanceof ManagerSaveException);
+    }
+
+    @Test
+    void kvClientListsKeysByPrefix() throws Exception {
+        kvTaskClient.putAll(Map.of("keys/2", "2", "keys/1", "1", "keys&more/1", "3", "other", "4"));
+        Assertions.assertEquals(List.of("keys/1", "keys/2"), kvTaskClient.keys("keys/"));
+        Assertions.assertEquals(List.of("keys&more/1"), kvTaskClient.keys("keys&"));
+        Assertions.assertEquals(List.of(), kvTaskClient.keys("missing/"));
+    }
+
+    @Test
+    void kvClientFailsWhenServerRejectsLoad() throws Exception {
+        kvTaskClient.putAll(Map.of("rejected/1", "1"));
+        kvServer.stop();
+        Thread.sleep(5);
+        kvServer = new KVServer();
+        kvServer.start();
+        Assertions.assertThrows(ManagerSaveException.class, () -> kvTaskClient.loadAll(List.of("rejected/1")));
+        Assertions.assertThrows(ManagerSaveException.class,
+                () -> kvTaskClient.loadAllVersioned(List.of("rejected/1")));
+        Assertions.assertThrows(ManagerSaveException.class, () -> kvTaskClient.keys("rejected/"));
+    }
+
+    @Test
+    void kvClientSavesOnlyUnchangedVersions() throws Exception {
+        Assertions.assertEquals(1L, kvTaskClient.putIfVersion("cas/1", "first", 0L));
+        Assertions.assertThrows(VersionConflictException.class, () -> kvTaskClient.putIfVersion("cas/1", "stale", 0L));
+        KVTaskClient.VersionedValue loaded = kvTaskClient.loadVersioned("cas/1");
+        Assertions.assertEquals("first", loaded.getValue());
+        Assertions.assertEquals(1L, loaded.getVersion());
+        Assertions.assertEquals(Map.of("cas/1", 2L, "cas/2", 1L),
+                kvTaskClient.putAllIfVersions(Map.of("cas/1", "second", "cas/2", "new"), Map.of("cas/1", 1L)));
+        VersionConflictException exception = Assertions.assertThrows(VersionConflictException.class,
+                () -> kvTaskClient.putAllIfVersions(Map.of("cas/1", "stale", "cas/3", "new"), Map.of("cas/1", 1L)));
+        Assertions.assertEquals(Map.of("cas/1", 2L, "cas/3", 0L), exception.getCurrentVersions());
+        Assertions.assertNull(kvTaskClient.load("cas/3"));
+        Assertions.assertEquals(2L, kvTaskClient.loadAllVersioned(List.of("cas/1", "cas/3")).get("cas/1").getVersion());
+    }
+
+    @Test
+    void freshManagerDoesNotOverwriteSavedTasks() throws IOException, InterruptedException {
+        Long firstId = taskManager.createTask(new Task("A", "description"));
+        Long secondId = taskManager.createTask(new Task("B", "description"));
+        HttpTasksManager fresh = new HttpTasksManager(KVSERVER_URL, "test");
+        Assertions.assertThrows(VersionConflictException.class, () -> fresh.createTask(new Task("C", "description")));
+        HttpTasksManager loadedManager = HttpTasksManager.load(KVSERVER_URL, "test");
+        Assertions.assertEquals(List.of(firstId, secondId), getIds(loadedManager.getAllTaskObjects()));
+        Assertions.assertEquals("A", loadedManager.getTaskObjectById(firstId).getSummary());
+        Assertions.assertTrue(HttpTasksManager.load(KVSERVER_URL, "empty").getAllTaskObjects().isEmpty());
+    }
+
+    @Test
+    void defaultManagerLoadsSavedTasks() throws IOException, InterruptedException {
+        Long firstId = taskManager.createTask(new Task("A", "description"));
+        TaskManager restarted = Managers.getDefault();
+        Long secondId = restarted.createTask(new Task("B", "description"));
+        Assertions.assertEquals(List.of(firstId, secondId), getIds(restarted.getAllTaskObjects()));
+        Assertions.assertEquals(List.of(firstId, secondId),
+                getIds(HttpTasksManager.load(KVSERVER_URL, HttpTasksManager.DEFAULT_PATH).getAllTaskObjects()));
+    }
+
+    @Test
+    void removedTasksAreRemovedFromServer() throws IOException, InterruptedException {
+        Long taskId = taskManager.createTask(new Task("Task", "description"));
+        Long keptId = taskManager.createTask(new Task("Kept", "description"));
+        Long epicId = taskManager.createEpic(new Epic("Epic", "description"));
+        Long subtaskId = taskManager.createSubtask(new Subtask("Subtask", "description", epicId));
+        Assertions.assertEquals("{\"lastId\":" + subtaskId + "}", kvTaskClient.load("test/manifest"));
+        taskManager.removeTask(taskId);
+        taskManager.removeEpic(epicId);
+        Assertions.assertEquals(List.of("test/manifest", "test/task/" + keptId),
+                kvTaskClient.keys("test/"));
+        HttpTasksManager loadedManager = HttpTasksManager.load(KVSERVER_URL, "test");
+        Assertions.assertEquals(List.of(keptId), getIds(loadedManager.getAllTaskObjects()));
+        Assertions.assertTrue(loadedManager.getAllEpicObjects().isEmpty());
+        Assertions.assertTrue(loadedManager.getAllSubtaskObjects().isEmpty());
+    }
+
+    @Test
+    void manifestListingTasksIsMigrated() throws IOException, InterruptedException {
+        kvTaskClient.putAll(Map.of(
+                "legacy/manifest", "{\"lastId\":2,\"tasks\":[1],\"epics\":[],\"subtasks\":[]}",
+                "legacy/task/1", "{\"id\":1,\"type\":\"TASK\",\"summary\":\"Listed\",\"description\":\"d\"}",
+                "legacy/task/2", "{\"id\":2,\"type\":\"TASK\",\"summary\":\"Removed\",\"description\":\"d\"}"));
+        HttpTasksManager loadedManager = HttpTasksManager.load(KVSERVER_URL, "legacy");
+        Assertions.assertEquals(List.of(1L), getIds(loadedManager.getAllTaskObjects()));
+        Assertions.assertEquals(List.of("legacy/manifest", "legacy/task/1"), kvTaskClient.keys("legacy/"));
+        Assertions.assertEquals("{\"lastId\":2}", kvTaskClient.load("legacy/manifest"));
+        Long newId = loadedManager.createTask(new Task("New", "description"));
+        Assertions.assertEquals(List.of(1L, newId),
+                getIds(HttpTasksManager.load(KVSERVER_URL, "legacy").getAllTaskObjects()));
+    }
+
+    @Test
+    void staleManagerDoesNotOverwriteTasks() throws IOException, InterruptedException {
+        Long taskId = taskManager.createTask(new Task("Task", "description"));
+        HttpTasksManager first = HttpTasksManager.load(KVSERVER_URL, "test");
+        HttpTasksManager second = HttpTasksManager.load(KVSERVER_URL, "test");
+        Task firstUpdate = new Task("First update", "description");
+        firstUpdate.setId(taskId);
+        first.updateTask(firstUpdate, taskId);
+        Task secondUpdate = new Task("Second update", "description");
+        secondUpdate.setId(taskId);
+        Assertions.assertThrows(VersionConflictException.class, () -> second.updateTask(secondUpdate, taskId));
+        first.createTask(new Task("First new", "description"));
+        Assertions.assertThrows(VersionConflictException.class,
+                () -> second.createTask(new Task("Second new", "description")));
+        Assertions.assertEquals("First update",
+                HttpTasksManager.load(KVSERVER_URL, "test").getTaskObjectById(taskId).getSummary());
+    }
+
+    @Test
+    void kvServerRejectsWithEmptyResponses() throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest unauthorized = HttpRequest.newBuilder().uri(URI.create(KVSERVER_URL + "/save/key"))
+                .POST(HttpRequest.BodyPublishers.ofString("value")).build();
+        HttpRequest wrongMethod = HttpRequest.newBuilder().uri(URI.create(KVSERVER_URL + "/register"))
+                .DELETE().build();
+        for (HttpRequest request : List.of(unauthorized, wrongMethod)) {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            Assertions.assertEquals(request == unauthorized ? 403 : 405, response.statusCode());
+            Assertions.assertEquals(Optional.of("0"), response.headers().firstValue("Content-Length"));
+            Assertions.assertTrue(response.body().isEmpty());
+        }
+        String apiToken = client.send(HttpRequest.newBuilder().uri(URI.create(KVSERVER_URL + "/register")).GET()
+                .build(), HttpResponse.BodyHandlers.ofString()).body();
+        HttpResponse<String> saved = client.send(HttpRequest.newBuilder()
+                .uri(URI.create(KVSERVER_URL + "/save/key?API_TOKEN=" + apiToken))
+                .POST(HttpRequest.BodyPublishers.ofString("value")).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, saved.statusCode());
+        Assertions.assertEquals(Optional.of("0"), saved.headers().firstValue("Content-Length"));
+        Assertions.assertEquals("value", kvTaskClient.load("key"));
+    }
+
+    @Test
+    void closedClientStopsItsThreadsOnly() throws IOException, InterruptedException {
+        final Set<Thread> before = getKVClientThreads();
+        final KVTaskClient closedClient = new KVTaskClient(KVSERVER_URL);
+        closedClient.put("key", "value");
+        Assertions.assertEquals("value", closedClient.load("key"));
+        final Set<Thread> started = getKVClientThreads();
+        started.removeAll(before);
+        Assertions.assertFalse(started.isEmpty());
+        final HttpClient shared = HttpClient.newHttpClient();
+        new KVTaskClient(KVSERVER_URL, shared).close();
+        closedClient.close();
+        for (Thread thread : started) {
+            thread.join(5000);
+            Assertions.assertFalse(thread.isAlive());
+        }
+        Assertions.assertEquals("value", new KVTaskClient(KVSERVER_URL, shared).load("key"));
+    }
+
     @AfterEach
     void afterEach() {
+        kvTaskClient.close();
+        taskManager.close();
         kvServer.stop();
         httpTaskServer.stop();
     }
 
+    private static Set<Thread> getKVClientThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("kv-client-"))
+                .collect(Collectors.toSet());
+    }
+
     private HttpResponse<String> sendFileAsPostMethodBody(String filename, String endpoint) throws IOException, InterruptedException {
         HttpClient client = HttpClient.newHttpClient();
         Path path = Path.of("src/test/resources/" + filename);
@@ -252,6 +515,14 @@ public class HttpTaskManagerTest extends TaskManagerTest<HttpTasksManager> {
         return client.send(request, HttpResponse.BodyHandlers.ofString());
     }
 
+    private HttpResponse<String> getJsonTaskFromServerAs(String user, String endpoint)
+            throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newHttpClient();
+        URI url = URI.create(TASK_MANAGER_URL + "/" + endpoint);
+        HttpRequest request = HttpRequest.newBuilder().uri(url).header("X-User", user).GET().build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
     private HttpResponse<String> deleteTaskFromServer(String endpoint) throws IOException, InterruptedException {
         HttpClient client = HttpClient.newHttpClient();
         URI url = URI.create(TASK_MANAGER_URL + "/" + endpoint);
@@ -259,6 +530,10 @@ public class HttpTaskManagerTest extends TaskManagerTest<HttpTasksManager> {
         return client.send(request, HttpResponse.BodyHandlers.ofString());
     }
 
+    private static List<Long> getIds(Collection<? extends Task> tasks) {
+        return tasks.stream().map(Task::getId).collect(Collectors.toList());
+    }
+
     private HttpTasksManager getLoadedHttpTasksManager() throws IOException, InterruptedException {
         Path path = Path.of("src/test/resources/FullBackup.json");
         String key = "test";
@@ -0,0 +1,102 @@
+package org.kamenkov.java_kanban.managers;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kamenkov.java_kanban.Status;
+import org.kamenkov.java_kanban.task.Epic;
+import org.kamenkov.java_kanban.task.Subtask;
+import org.kamenkov.java_kanban.task.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournaledTasksManagerTest extends TaskManagerTest<JournaledTasksManager> {
+
+    @TempDir
+    File tempDir;
+    String path;
+
+    @BeforeEach
+    void beforeEach() {
+        path = new File(tempDir, "backup.csv").getPath();
+        taskManager = new JournaledTasksManager(path, FsyncPolicy.PER_BATCH);
+    }
+
+    @AfterEach
+    void afterEach() {
+        taskManager.close();
+    }
+
+    @Test
+    void loadFromSnapshotAndJournal() {
+        Task task = new Task("Summary1", "Description1");
+        task.setStartDate(LocalDateTime.of(2022, 1, 1, 10, 0));
+        task.setDurationInMinutes(30);
+        Long taskId = taskManager.createTask(task);
+        Long epicId = taskManager.createEpic(new Epic("Summary2", "Description2"));
+        Subtask subtask = new Subtask("Summary3", "Description3", epicId);
+        Long subtaskId = taskManager.createSubtask(subtask);
+        subtask.setStatus(Status.DONE);
+        taskManager.updateSubtask(subtask, subtaskId);
+        Long removedId = taskManager.createTask(new Task("Summary4", "Description4"));
+        taskManager.getTaskObjectById(removedId);
+        taskManager.getEpicObjectById(epicId);
+        taskManager.getTaskObjectById(taskId);
+        taskManager.removeTask(removedId);
+        taskManager.close();
+
+        JournaledTasksManager loadedManager = JournaledTasksManager.loadFromFile(new File(path), FsyncPolicy.PER_BATCH);
+        assertEquals(1, loadedManager.getAllTaskObjects().size());
+        assertEquals(1, loadedManager.getAllEpicObjects().size());
+        assertEquals(1, loadedManager.getAllSubtaskObjects().size());
+        assertEquals(List.of(epicId, taskId), loadedManager.getHistory().stream().map(Task::getId)
+                .collect(Collectors.toList()));
+        assertEquals(Status.DONE, loadedManager.getEpicObjectById(epicId).getStatus());
+        assertEquals(task.toString(), loadedManager.getTaskObjectById(taskId).toString());
+        loadedManager.close();
+    }
+
+    @Test
+    void checkpointTruncatesJournal() throws IOException {
+        Path journal = Path.of(path + ".journal");
+        taskManager.createTask(new Task("Summary", "Description"));
+        assertTrue(Files.size(journal) > 0);
+        taskManager.checkpoint();
+        assertEquals(0, Files.size(journal));
+        assertEquals(1, FileBackedTasksManager.loadFromFile(new File(path)).getAllTaskObjects().size());
+    }
+
+    @Test
+    void checkpointAfterInterval() throws IOException {
+        taskManager.close();
+        taskManager = new JournaledTasksManager(path, FsyncPolicy.PER_OPERATION, 2);
+        Path journal = Path.of(path + ".journal");
+        taskManager.createTask(new Task("Summary1", "Description1"));
+        assertTrue(Files.size(journal) > 0);
+        taskManager.createTask(new Task("Summary2", "Description2"));
+        assertEquals(0, Files.size(journal));
+        assertEquals(2, FileBackedTasksManager.loadFromFile(new File(path)).getAllTaskObjects().size());
+    }
+
+    @Test
+    void loadIgnoresTornRecord() throws IOException {
+        taskManager.createTask(new Task("Summary1", "Description1"));
+        taskManager.close();
+        Files.writeString(Path.of(path + ".journal"), "PUT,2,TASK,Summary2,NEW,Descr", UTF_8,
+                StandardOpenOption.APPEND);
+        JournaledTasksManager loadedManager = JournaledTasksManager.loadFromFile(new File(path), FsyncPolicy.PER_BATCH);
+        assertEquals(1, loadedManager.getAllTaskObjects().size());
+        loadedManager.close();
+    }
+}
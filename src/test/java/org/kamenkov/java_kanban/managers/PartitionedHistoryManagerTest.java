@@ -0,0 +1,161 @@
+package org.kamenkov.java_kanban.managers;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kamenkov.java_kanban.task.Task;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionedHistoryManagerTest extends HistoryManagerTest<PartitionedHistoryManager> {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @BeforeEach
+    void beforeEach() {
+        historyManager = new PartitionedHistoryManager();
+    }
+
+    @AfterEach
+    void afterEach() {
+        PartitionedHistoryManager.clearCurrentPartition();
+    }
+
+    @Test
+    void keepHistoryOfUsersApart() {
+        Task task1 = createTask(1L);
+        Task task2 = createTask(2L);
+        viewAs("alice", task1);
+        viewAs("bob", task2);
+        viewAs("bob", task1);
+        assertEquals(List.of(task1), historyOf("alice"));
+        assertEquals(List.of(task2, task1), historyOf("bob"));
+        assertTrue(historyOf(null).isEmpty());
+    }
+
+    @Test
+    void removeTaskFromAllUsers() {
+        Task task1 = createTask(1L);
+        Task task2 = createTask(2L);
+        viewAs("alice", task1);
+        viewAs("bob", task1);
+        viewAs("bob", task2);
+        historyManager.remove(1L);
+        assertTrue(historyOf("alice").isEmpty());
+        assertEquals(List.of(task2), historyOf("bob"));
+    }
+
+    @Test
+    void limitHistoryOfUser() {
+        historyManager = new PartitionedHistoryManager(2, 1000, 10);
+        Task task1 = createTask(1L);
+        Task task2 = createTask(2L);
+        Task task3 = createTask(3L);
+        viewAs("alice", task1);
+        viewAs("alice", task2);
+        viewAs("alice", task3);
+        viewAs("bob", task1);
+        assertEquals(List.of(task2, task3), historyOf("alice"));
+        assertEquals(List.of(task1), historyOf("bob"));
+    }
+
+    @Test
+    void evictIdleUsers() {
+        historyManager = new PartitionedHistoryManager(10, 1000, 10, clock::get);
+        Task task = createTask(1L);
+        viewAs("alice", task);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        viewAs("bob", task);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        viewAs("carol", task);
+        assertEquals(2, historyManager.getPartitionCount());
+        assertTrue(historyOf("alice").isEmpty());
+        assertEquals(List.of(task), historyOf("bob"));
+    }
+
+    @Test
+    void evictLeastRecentlyUsedUsersOverLimit() {
+        historyManager = new PartitionedHistoryManager(10, 1000, 2, clock::get);
+        Task task = createTask(1L);
+        viewAs("alice", task);
+        clock.incrementAndGet();
+        viewAs("bob", task);
+        clock.incrementAndGet();
+        historyOf("alice");
+        clock.incrementAndGet();
+        viewAs("carol", task);
+        assertEquals(2, historyManager.getPartitionCount());
+        assertTrue(historyOf("bob").isEmpty());
+        assertEquals(List.of(task), historyOf("alice"));
+    }
+
+    @Test
+    void keepViewOfUserEvictedDuringAdd() {
+        historyManager = new PartitionedHistoryManager(10, 1000, 10, clock::get);
+        Task other = createTask(2L);
+        // the view of bob starts a sweep that evicts alice while her view is being added
+        Task task = new Task("Summary", "Description") {
+            private boolean swept;
+
+            @Override
+            public Long getId() {
+                if (!swept) {
+                    swept = true;
+                    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+                    viewAs("bob", other);
+                }
+                return 1L;
+            }
+        };
+        viewAs("alice", task);
+        assertEquals(List.of(task), historyOf("alice"));
+        assertEquals(List.of(other), historyOf("bob"));
+    }
+
+    @Test
+    void removeTaskFromUsersThatViewLater() {
+        historyManager = new PartitionedHistoryManager(10, 1000, 10, clock::get);
+        Task task1 = createTask(1L);
+        Task task2 = createTask(2L);
+        viewAs("alice", task1);
+        viewAs("bob", task1);
+        historyManager.remove(1L);
+        viewAs("alice", task2);
+        assertEquals(List.of(task2), historyOf("alice"));
+        assertTrue(historyOf("bob").isEmpty());
+        assertEquals(1, historyManager.getPendingRemovalCount());
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        assertEquals(List.of(task2), historyOf("alice"));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(400));
+        // the sweep evicts bob and drops the removal that alice has applied
+        historyManager.remove(2L);
+        assertEquals(1, historyManager.getPartitionCount());
+        assertEquals(1, historyManager.getPendingRemovalCount());
+        assertTrue(historyOf("alice").isEmpty());
+    }
+
+    private void viewAs(String user, Task task) {
+        PartitionedHistoryManager.setCurrentPartition(user);
+        historyManager.add(task);
+        PartitionedHistoryManager.clearCurrentPartition();
+    }
+
+    private List<Task> historyOf(String user) {
+        PartitionedHistoryManager.setCurrentPartition(user);
+        try {
+            return historyManager.getHistory();
+        } finally {
+            PartitionedHistoryManager.clearCurrentPartition();
+        }
+    }
+
+    private static Task createTask(Long id) {
+        Task task = new Task("Summary", "Description");
+        task.setId(id);
+        return task;
+    }
+}
@@ -87,6 +87,26 @@ abstract class TaskManagerTest<T extends TaskManager> {
         assertEquals(task, savedTask, "Tasks are not equal.");
     }
 
+    @Test
+    void getAndRemoveTasksByPrimitiveIds() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ids.add(taskManager.createTask(new Task("Summary" + i, "Description" + i)));
+        }
+        for (int i = 0; i < ids.size(); i += 2) {
+            taskManager.removeTask(ids.get(i).longValue());
+        }
+        List<Long> expected = new ArrayList<>();
+        for (int i = 1; i < ids.size(); i += 2) {
+            expected.add(ids.get(i));
+            assertEquals(ids.get(i), taskManager.getTaskObjectById(ids.get(i).longValue()).getId());
+            assertNull(taskManager.getTaskObjectById(ids.get(i - 1).longValue()));
+        }
+        List<Long> savedIds = new ArrayList<>();
+        taskManager.getAllTaskObjects().forEach(task -> savedIds.add(task.getId()));
+        assertEquals(expected, savedIds);
+    }
+
     @Test
     void getTaskObjectByIdIfEmpty() {
         assertNull(taskManager.getTaskObjectById(1L));
@@ -349,6 +369,26 @@ abstract class TaskManagerTest<T extends TaskManager> {
         assertThrows(NullPointerException.class, () -> taskManager.updateSubtask(null, createdSubtaskId));
     }
 
+    @Test
+    void updateSubtaskWithoutIdUpdatesEpic() {
+        Epic createdEpic = new Epic("Summary", "Description");
+        final Long createdEpicId = taskManager.createEpic(createdEpic);
+        Subtask createdSubtask = new Subtask("Summary", "Description", createdEpicId);
+        createdSubtask.setStartDate(LocalDateTime.of(2022, 1, 1, 10, 0));
+        createdSubtask.setDurationInMinutes(30);
+        final Long createdSubtaskId = taskManager.createSubtask(createdSubtask);
+        Subtask updatedSubtask = new Subtask("Summary1", "Description1", createdEpicId);
+        updatedSubtask.setStatus(Status.DONE);
+        updatedSubtask.setStartDate(LocalDateTime.of(2022, 1, 1, 10, 15));
+        updatedSubtask.setDurationInMinutes(30);
+        taskManager.updateSubtask(updatedSubtask, createdSubtaskId);
+        assertEquals(createdSubtaskId, taskManager.getSubtaskObjectById(createdSubtaskId).getId());
+        final Epic savedEpic = taskManager.getEpicObjectById(createdEpicId);
+        assertEquals(Status.DONE, savedEpic.getStatus());
+        assertEquals(LocalDateTime.of(2022, 1, 1, 10, 15), savedEpic.getStartDate());
+        assertEquals(List.of(updatedSubtask), new ArrayList<>(taskManager.getSubtaskObjectsByParentId(createdEpicId)));
+    }
+
     @Test
     void removeTask() {
         Task task1 = new Task("Summary1", "Description1");
@@ -476,4 +516,64 @@ abstract class TaskManagerTest<T extends TaskManager> {
         taskManager.createTask(task1);
         assertThrows(IllegalArgumentException.class, () -> taskManager.createTask(task2));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testIntersectionWithLongTaskStartedBefore() {
+        Task task1 = new Task("Summary1", "Description1");
+        task1.setStartDate(LocalDateTime.of(2022, 1, 1, 8, 0));
+        task1.setDurationInMinutes(600);
+        Task task2 = new Task("Summary2", "Description2");
+        task2.setStartDate(LocalDateTime.of(2022, 1, 1, 19, 0));
+        task2.setDurationInMinutes(10);
+        Task task3 = new Task("Summary3", "Description3");
+        task3.setStartDate(LocalDateTime.of(2022, 1, 1, 17, 0));
+        task3.setDurationInMinutes(10);
+        taskManager.createTask(task1);
+        taskManager.createTask(task2);
+        assertThrows(IllegalArgumentException.class, () -> taskManager.createTask(task3));
+    }
+
+    @Test
+    void testNoIntersectionWithAdjacentTasks() {
+        Task task1 = new Task("Summary1", "Description1");
+        task1.setStartDate(LocalDateTime.of(2022, 1, 1, 10, 0));
+        task1.setDurationInMinutes(30);
+        Task task2 = new Task("Summary2", "Description2");
+        task2.setStartDate(LocalDateTime.of(2022, 1, 1, 10, 30));
+        task2.setDurationInMinutes(30);
+        Task task3 = new Task("Summary3", "Description3");
+        task3.setStartDate(LocalDateTime.of(2022, 1, 1, 9, 30));
+        task3.setDurationInMinutes(30);
+        taskManager.createTask(task1);
+        taskManager.createTask(task2);
+        taskManager.createTask(task3);
+        assertEquals(3, taskManager.getAllTaskObjects().size());
+    }
+
+    @Test
+    void testIntersectionIgnoresUpdatedTaskItself() {
+        Task task = new Task("Summary1", "Description1");
+        task.setStartDate(LocalDateTime.of(2022, 1, 1, 10, 0));
+        task.setDurationInMinutes(30);
+        final Long id = taskManager.createTask(task);
+        task.setDurationInMinutes(60);
+        taskManager.updateTask(task, id);
+        Task overlapping = new Task("Summary2", "Description2");
+        overlapping.setStartDate(LocalDateTime.of(2022, 1, 1, 10, 45));
+        overlapping.setDurationInMinutes(10);
+        assertThrows(IllegalArgumentException.class, () -> taskManager.createTask(overlapping));
+    }
+
+    @Test
+    void testIntersectionAfterRemove() {
+        Task task1 = new Task("Summary1", "Description1");
+        task1.setStartDate(LocalDateTime.of(2022, 1, 1, 10, 0));
+        task1.setDurationInMinutes(50);
+        Task task2 = new Task("Summary2", "Description2");
+        task2.setStartDate(LocalDateTime.of(2022, 1, 1, 10, 20));
+        task2.setDurationInMinutes(50);
+        final Long id = taskManager.createTask(task1);
+        taskManager.removeTask(id);
+        assertNotNull(taskManager.createTask(task2));
+    }
+}
@@ -0,0 +1,74 @@
+package org.kamenkov.java_kanban.managers;
+
+import org.junit.jupiter.api.Test;
+import org.kamenkov.java_kanban.task.Task;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeSlotIndexTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2022, 1, 1, 0, 0);
+
+    @Test
+    void longTaskIsFoundWithoutScanningShortOnes() {
+        TimeSlotIndex index = new TimeSlotIndex();
+        index.add(task(1L, 0, 100_000));
+        for (long i = 0; i < 1000; i++) {
+            index.add(task(i + 2, 100_000 + i * 10, 5));
+        }
+        assertEquals(Optional.of(1L), index.findFirstOverlap(task(null, 50_000, 1)).map(Task::getId));
+        assertEquals(Optional.of(2L), index.findFirstOverlap(task(null, 100_001, 100)).map(Task::getId));
+        assertEquals(Optional.empty(), index.findFirstOverlap(task(null, 100_005, 5)));
+        assertEquals(Optional.empty(), index.findFirstOverlap(task(1L, 50_000, 50_000)));
+    }
+
+    @Test
+    void findsTheSameOverlapsAsFullScan() {
+        final Random random = new Random(42);
+        final TimeSlotIndex index = new TimeSlotIndex();
+        final Map<Long, Task> indexed = new HashMap<>();
+        for (long i = 1; i <= 3000; i++) {
+            final Long id = random.nextInt(4) == 0 && !indexed.isEmpty()
+                    ? new ArrayList<>(indexed.keySet()).get(random.nextInt(indexed.size())) : (Long) i;
+            final Task task = task(id, random.nextInt(10_000), random.nextInt(5) == 0 ? 0 : random.nextInt(300));
+            final Optional<Task> overlap = index.findFirstOverlap(task);
+            assertEquals(findByScan(indexed.values(), task).map(Task::getId), overlap.map(Task::getId));
+            if (overlap.isEmpty()) {
+                index.add(task);
+                indexed.put(id, task);
+            } else if (random.nextBoolean()) {
+                index.remove(overlap.get().getId());
+                indexed.remove(overlap.get().getId());
+            }
+        }
+    }
+
+    private static Optional<Task> findByScan(Iterable<Task> tasks, Task task) {
+        final List<Task> overlaps = new ArrayList<>();
+        for (Task other : tasks) {
+            if (!other.getId().equals(task.getId())
+                    && other.getStartEpochSecond() < task.getEndEpochSecond()
+                    && other.getEndEpochSecond() > task.getStartEpochSecond()) {
+                overlaps.add(other);
+            }
+        }
+        return overlaps.stream().min(Comparator.comparingLong(Task::getStartEpochSecond).thenComparing(Task::getId));
+    }
+
+    private static Task task(Long id, long startMinute, long duration) {
+        final Task task = new Task("Summary" + id, "Description");
+        task.setId(id);
+        task.setStartDate(START.plusMinutes(startMinute));
+        task.setDurationInMinutes(duration);
+        return task;
+    }
+}
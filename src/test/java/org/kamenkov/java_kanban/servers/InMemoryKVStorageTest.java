@@ -0,0 +1,52 @@
+package org.kamenkov.java_kanban.servers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryKVStorageTest {
+
+    @Test
+    void batchIsReadWholeOrNotAtAll() throws InterruptedException {
+        final InMemoryKVStorage storage = new InMemoryKVStorage();
+        storage.putAll(Map.of("task/1", bytes(0), "task/2", bytes(0)));
+        final AtomicBoolean stop = new AtomicBoolean();
+        final Thread writer = new Thread(() -> {
+            for (int i = 1; !stop.get(); i++) {
+                storage.putAll(Map.of("task/1", bytes(i), "task/2", bytes(i)));
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 100_000; i++) {
+                final Map<String, KVEntry> values = storage.getAll(List.of("task/1", "task/2"));
+                assertArrayEquals(values.get("task/1").getValue(), values.get("task/2").getValue());
+                assertEquals(values.get("task/1").getVersion(), values.get("task/2").getVersion());
+            }
+        } finally {
+            stop.set(true);
+            writer.join();
+        }
+        assertEquals(List.of("task/1", "task/2"), storage.keys("task/"));
+    }
+
+    @Test
+    void staleVersionIsNotSaved() {
+        final InMemoryKVStorage storage = new InMemoryKVStorage();
+        assertEquals(Map.of("task/1", 1L), storage.putAll(Map.of("task/1", bytes(1)), Map.of("task/1", 0L)));
+        assertNull(storage.putAll(Map.of("task/1", bytes(2), "task/2", bytes(2)), Map.of("task/1", 0L)));
+        assertNull(storage.get("task/2"));
+        assertEquals(2L, storage.put("task/1", bytes(3)));
+        assertNull(storage.putAll(Map.of("task/1", bytes(4)), Map.of("task/1", 1L)));
+        assertEquals("3", new String(storage.get("task/1").getValue(), UTF_8));
+    }
+
+    private static byte[] bytes(int value) {
+        return String.valueOf(value).getBytes(UTF_8);
+    }
+}
@@ -0,0 +1,197 @@
+package org.kamenkov.java_kanban.servers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogKVStorageTest {
+
+    @Test
+    void valuesSurviveReopening(@TempDir Path tempDir) {
+        Path path = tempDir.resolve("kv.log");
+        try (LogKVStorage storage = new LogKVStorage(path)) {
+            storage.put("task/1", bytes("first"));
+            storage.putAll(Map.of("task/2", bytes("второй"), "task/1", bytes("updated")));
+            assertEquals("updated", text(storage.get("task/1")));
+            assertNull(storage.get("task/3"));
+        }
+        try (LogKVStorage storage = new LogKVStorage(path)) {
+            assertEquals("updated", text(storage.get("task/1")));
+            assertEquals("второй", text(storage.get("task/2")));
+        }
+    }
+
+    @Test
+    void tornRecordIsCutOffOnRecovery(@TempDir Path tempDir) throws IOException {
+        Path path = tempDir.resolve("kv.log");
+        final long completeSize;
+        try (LogKVStorage storage = new LogKVStorage(path)) {
+            storage.put("key1", bytes("value1"));
+            completeSize = storage.size();
+            storage.putAll(Map.of("key2", bytes("value2"), "key3", bytes("value3")));
+        }
+        final byte[] content = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(content, content.length - 3));
+        try (LogKVStorage storage = new LogKVStorage(path)) {
+            assertEquals("value1", text(storage.get("key1")));
+            assertNull(storage.get("key2"));
+            assertNull(storage.get("key3"));
+            assertEquals(completeSize, storage.size());
+            storage.put("key2", bytes("again"));
+        }
+        try (LogKVStorage storage = new LogKVStorage(path)) {
+            assertEquals("again", text(storage.get("key2")));
+        }
+    }
+
+    @Test
+    void compactionKeepsLatestValues(@TempDir Path tempDir) {
+        Path path = tempDir.resolve("kv.log");
+        try (LogKVStorage storage = new LogKVStorage(path, false, Long.MAX_VALUE)) {
+            for (int i = 0; i < 1_000; i++) {
+                storage.put("key" + (i % 10), bytes("value" + i));
+            }
+            final long size = storage.size();
+            storage.compact();
+            assertTrue(storage.size() < size / 50);
+            storage.put("key0", bytes("after compaction"));
+            for (int i = 1; i < 10; i++) {
+                assertEquals("value" + (990 + i), text(storage.get("key" + i)));
+            }
+        }
+        try (LogKVStorage storage = new LogKVStorage(path)) {
+            assertEquals("after compaction", text(storage.get("key0")));
+            assertEquals("value999", text(storage.get("key9")));
+        }
+        assertFalse(Files.exists(tempDir.resolve("kv.log.compact")));
+    }
+
+    @Test
+    void compactionStartsInBackground(@TempDir Path tempDir) throws Exception {
+        Path path = tempDir.resolve("kv.log");
+        try (LogKVStorage storage = new LogKVStorage(path, false, 1_000)) {
+            for (int i = 0; i < 1_000; i++) {
+                storage.put("key" + (i % 10), bytes("value" + i));
+            }
+            storage.awaitCompaction();
+            assertTrue(storage.size() <= 5_000);
+            assertEquals("value999", text(storage.get("key9")));
+        }
+    }
+
+    @Test
+    void keysAndValuesAreReadTogether(@TempDir Path tempDir) {
+        try (LogKVStorage storage = new LogKVStorage(tempDir.resolve("kv.log"))) {
+            storage.putAll(Map.of("task/2", bytes("2"), "task/1", bytes("1"), "epic/3", bytes("3")));
+            assertEquals(List.of("task/1", "task/2"), storage.keys("task/"));
+            assertEquals(List.of("epic/3", "task/1", "task/2"), storage.keys(""));
+            final Map<String, KVEntry> values = storage.getAll(List.of("task/1", "epic/3", "task/4"));
+            assertEquals(Set.of("task/1", "epic/3"), values.keySet());
+            assertEquals("3", text(values.get("epic/3")));
+        }
+    }
+
+    @Test
+    void versionsSurviveCompactionAndReopening(@TempDir Path tempDir) {
+        Path path = tempDir.resolve("kv.log");
+        try (LogKVStorage storage = new LogKVStorage(path, false, Long.MAX_VALUE)) {
+            assertEquals(1L, storage.put("task/1", bytes("first")));
+            assertEquals(Map.of("task/1", 2L, "task/2", 1L),
+                    storage.putAll(Map.of("task/1", bytes("second"), "task/2", bytes("first"))));
+            storage.compact();
+            assertNull(storage.putAll(Map.of("task/1", bytes("stale"), "task/2", bytes("stale")),
+                    Map.of("task/1", 2L, "task/2", 0L)));
+            assertEquals(Map.of("task/1", 3L), storage.putAll(Map.of("task/1", bytes("third")), Map.of("task/1", 2L)));
+        }
+        try (LogKVStorage storage = new LogKVStorage(path)) {
+            assertEquals(3L, storage.get("task/1").getVersion());
+            assertEquals("third", text(storage.get("task/1")));
+            assertEquals(1L, storage.get("task/2").getVersion());
+            assertEquals(Map.of("task/3", 1L), storage.putAll(Map.of("task/3", bytes("new")), Map.of("task/3", 0L)));
+        }
+    }
+
+    @Test
+    void logOfUnknownFormatIsLeftAsItIs(@TempDir Path tempDir) throws IOException {
+        Path path = tempDir.resolve("kv.log");
+        final byte[] content = bytes("these are not the records of the log");
+        Files.write(path, content);
+        assertThrows(UncheckedIOException.class, () -> new LogKVStorage(path));
+        assertArrayEquals(content, Files.readAllBytes(path));
+    }
+
+    @Test
+    void largeValueIsStreamedWithItsLength(@TempDir Path tempDir) throws IOException {
+        final byte[] value = new byte[5 << 20];
+        new Random(42).nextBytes(value);
+        try (LogKVStorage storage = new LogKVStorage(tempDir.resolve("kv.log"))) {
+            storage.putAll(Map.of("snapshot", value, "small", bytes("value")));
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final long[] length = new long[1];
+            assertTrue(storage.transferTo("snapshot", (size, version) -> {
+                length[0] = size;
+                return out;
+            }));
+            assertEquals(value.length, length[0]);
+            assertArrayEquals(value, out.toByteArray());
+            assertFalse(storage.transferTo("missing", (size, version) -> fail("Nothing should be opened")));
+            assertEquals("value", text(storage.get("small")));
+        }
+    }
+
+    @Test
+    void streamedValueSurvivesWritesAndCompaction(@TempDir Path tempDir) throws IOException {
+        try (LogKVStorage storage = new LogKVStorage(tempDir.resolve("kv.log"), false, Long.MAX_VALUE)) {
+            storage.put("snapshot", bytes("first"));
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertTrue(storage.transferTo("snapshot", (size, version) -> {
+                storage.put("snapshot", bytes("second"));
+                storage.compact();
+                return out;
+            }));
+            assertEquals("first", out.toString(UTF_8));
+            assertEquals("second", text(storage.get("snapshot")));
+        }
+    }
+
+    @Test
+    void removedKeysStayRemovedAfterCompactionAndReopening(@TempDir Path tempDir) {
+        Path path = tempDir.resolve("kv.log");
+        try (LogKVStorage storage = new LogKVStorage(path, false, Long.MAX_VALUE)) {
+            storage.putAll(Map.of("task/1", bytes("1"), "task/2", bytes("2"), "task/3", bytes("3")));
+            assertNull(storage.putAll(Map.of(), List.of("task/1"), Map.of("task/1", 2L)));
+            assertEquals(Map.of("task/1", 0L, "task/4", 0L),
+                    storage.putAll(Map.of(), List.of("task/1", "task/4"), Map.of("task/1", 1L)));
+            assertEquals(List.of("task/2", "task/3"), storage.keys("task/"));
+            storage.compact();
+            assertEquals(Map.of("task/2", 0L, "task/5", 1L),
+                    storage.putAll(Map.of("task/5", bytes("5")), List.of("task/2"), Map.of()));
+        }
+        try (LogKVStorage storage = new LogKVStorage(path)) {
+            assertEquals(List.of("task/3", "task/5"), storage.keys("task/"));
+            assertNull(storage.get("task/1"));
+            assertEquals(1L, storage.put("task/1", bytes("again")));
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(UTF_8);
+    }
+
+    private static String text(KVEntry entry) {
+        return new String(entry.getValue(), UTF_8);
+    }
+}
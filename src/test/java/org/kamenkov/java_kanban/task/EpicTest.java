@@ -1,10 +1,17 @@
 package org.kamenkov.java_kanban.task;
 
+import com.google.gson.Gson;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.kamenkov.java_kanban.Status;
 import org.kamenkov.java_kanban.managers.TaskManager;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
 abstract class EpicTest<T extends TaskManager> {
 
     T taskManager;
@@ -40,6 +47,95 @@ abstract class EpicTest<T extends TaskManager> {
         Assertions.assertEquals(Status.IN_PROGRESS, epic.getStatus());
     }
 
+    @Test
+    void incrementalAggregatesMatchFullRecalculation() {
+        final Random random = new Random(42);
+        final LocalDateTime start = LocalDateTime.of(2022, 1, 1, 0, 0);
+        final List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            final int operation = ids.isEmpty() ? 0 : random.nextInt(3);
+            if (operation == 0) {
+                Subtask subtask = new Subtask("summary", "description", epic.getId());
+                subtask.setStatus(Status.values()[random.nextInt(Status.values().length)]);
+                if (random.nextBoolean()) {
+                    subtask.setStartDate(start.plusHours(i));
+                    subtask.setDurationInMinutes(random.nextInt(60));
+                }
+                ids.add(taskManager.createSubtask(subtask));
+            } else if (operation == 1) {
+                final Long id = ids.get(random.nextInt(ids.size()));
+                Subtask subtask = taskManager.getSubtaskObjectById(id);
+                subtask.setStatus(Status.values()[random.nextInt(Status.values().length)]);
+                subtask.setStartDate(random.nextBoolean() ? null : start.plusHours(i));
+                subtask.setDurationInMinutes(random.nextInt(60));
+                taskManager.updateSubtask(subtask, id);
+            } else {
+                taskManager.removeSubtask(ids.remove(random.nextInt(ids.size())));
+            }
+            assertAggregatesMatchFullRecalculation();
+            Assertions.assertEquals(ids,
+                    epic.getSubtaskObjects().stream().map(Task::getId).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void removeAllSubtaskObjectsEmptiesEpic() {
+        createSubtaskWithStatus(Status.DONE);
+        createSubtaskWithStatus(Status.IN_PROGRESS);
+        taskManager.removeAllSubtaskObjects();
+        Assertions.assertTrue(epic.getSubtaskObjects().isEmpty());
+        Assertions.assertEquals(Status.NEW, epic.getStatus());
+        createSubtaskWithStatus(Status.DONE);
+        Assertions.assertEquals(Status.DONE, epic.getStatus());
+    }
+
+    @Test
+    void addingKnownSubtaskReplacesIt() {
+        Subtask subtask = createSubtaskWithStatus(Status.NEW);
+        Subtask changed = new Subtask("summary", "description", epic.getId());
+        changed.setId(subtask.getId());
+        changed.setStatus(Status.DONE);
+        epic.addSubtask(changed);
+        Assertions.assertEquals(List.of(changed), epic.getSubtaskObjects());
+        Assertions.assertEquals(Status.DONE, epic.getStatus());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> epic.getSubtaskObjects().add(subtask));
+    }
+
+    @Test
+    void jsonKeepsFieldsShape() {
+        Subtask subtask = createSubtaskWithStatus(Status.DONE);
+        subtask.setStartDate(LocalDateTime.of(2022, 1, 1, 10, 0));
+        subtask.setDurationInMinutes(30);
+        taskManager.updateSubtask(subtask, subtask.getId());
+        final String json = new Gson().toJson(epic);
+        Assertions.assertTrue(json.contains("\"type\":\"EPIC\""), json);
+        Assertions.assertTrue(json.contains("\"status\":\"DONE\""), json);
+        Assertions.assertTrue(json.contains("\"startDate\":{\"date\":{\"year\":2022,\"month\":1,\"day\":1},"
+                + "\"time\":{\"hour\":10,\"minute\":0,\"second\":0,\"nano\":0}}"), json);
+        final Epic restored = new Gson().fromJson(json, Epic.class);
+        Assertions.assertEquals(epic.getStartDate(), restored.getStartDate());
+        Assertions.assertEquals(epic.getEndDate(), restored.getEndDate());
+        Assertions.assertEquals(Status.DONE, restored.getStatus());
+        Assertions.assertEquals(Type.SUBTASK, restored.getSubtaskObjects().get(0).getType());
+        Assertions.assertNull(new Gson().fromJson("{\"summary\":\"summary\"}", Task.class).getStartDate());
+        final Task withNulls = new Gson().fromJson("{\"summary\":\"summary\",\"status\":null,\"type\":null}", Task.class);
+        Assertions.assertEquals(Status.NEW, withNulls.getStatus());
+        Assertions.assertEquals(Type.TASK, withNulls.getType());
+    }
+
+    private void assertAggregatesMatchFullRecalculation() {
+        Epic expected = new Epic("summary", "description");
+        expected.getSubtaskObjects().addAll(epic.getSubtaskObjects());
+        expected.recalculateStatus();
+        expected.recalculateDates();
+        Assertions.assertEquals(expected.getStatus(), epic.getStatus());
+        if (!epic.getSubtaskObjects().isEmpty()) {
+            Assertions.assertEquals(expected.getStartDate(), epic.getStartDate());
+            Assertions.assertEquals(expected.getEndDate(), epic.getEndDate());
+            Assertions.assertEquals(expected.getDurationInMinutes(), epic.getDurationInMinutes());
+        }
+    }
+
     Subtask createSubtaskWithStatus(Status status) {
         Long id = taskManager.createSubtask(new Subtask("summary", "description", epic.getId()));
         Subtask subtask = taskManager.getSubtaskObjectById(id);
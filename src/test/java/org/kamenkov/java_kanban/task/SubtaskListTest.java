@@ -0,0 +1,79 @@
+package org.kamenkov.java_kanban.task;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+class SubtaskListTest {
+
+    @Test
+    void removingFromHeadOfLargeEpicDoesNotMoveOtherSubtasks() {
+        final int count = 200_000;
+        final SubtaskList list = new SubtaskList();
+        final List<Subtask> subtasks = new ArrayList<>();
+        for (long id = 1; id <= count; id++) {
+            subtasks.add(subtask(id));
+        }
+        list.addAll(subtasks);
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (int i = 0; i < count / 2 - 1; i++) {
+                Assertions.assertSame(subtasks.get(i), list.removeSame(subtasks.get(i)));
+            }
+        });
+        Assertions.assertEquals(count / 2 + 1, list.size());
+        Assertions.assertSame(subtasks.get(count / 2 - 1), list.get(0));
+        Assertions.assertEquals(1, list.indexOf(subtasks.get(count / 2)));
+        Assertions.assertSame(subtasks.get(count - 1), list.getById(count));
+        Assertions.assertNull(list.getById(1));
+        Assertions.assertEquals(subtasks.subList(count / 2 - 1, count), new ArrayList<>(list));
+    }
+
+    @Test
+    void behavesLikeArrayList() {
+        final Random random = new Random(42);
+        final SubtaskList list = new SubtaskList();
+        final List<Subtask> expected = new ArrayList<>();
+        long nextId = 1;
+        for (int i = 0; i < 20_000; i++) {
+            final int operation = random.nextInt(6);
+            if (operation < 2 || expected.isEmpty()) {
+                final Subtask subtask = subtask(nextId++);
+                list.add(subtask);
+                expected.add(subtask);
+            } else if (operation == 2) {
+                final int index = random.nextInt(expected.size());
+                Assertions.assertSame(expected.remove(index), list.remove(index));
+            } else if (operation == 3) {
+                final Subtask subtask = expected.remove(random.nextInt(expected.size()));
+                Assertions.assertSame(subtask, list.removeSame(subtask));
+            } else if (operation == 4) {
+                final int index = random.nextInt(expected.size());
+                Assertions.assertSame(expected.get(index), list.get(index));
+                Assertions.assertEquals(index, list.indexOf(expected.get(index)));
+            } else {
+                final Iterator<Subtask> iterator = list.iterator();
+                final Subtask removed = expected.remove(random.nextInt(expected.size()));
+                while (iterator.next() != removed) {
+                    // skip to the removed subtask
+                }
+                iterator.remove();
+            }
+            Assertions.assertEquals(expected.size(), list.size());
+        }
+        Assertions.assertEquals(expected, new ArrayList<>(list));
+        for (Subtask subtask : expected) {
+            Assertions.assertSame(subtask, list.getById(subtask.getId()));
+        }
+    }
+
+    private static Subtask subtask(long id) {
+        final Subtask subtask = new Subtask("Summary" + id, "Description", 0L);
+        subtask.setId(id);
+        return subtask;
+    }
+}